@@ -1,6 +1,7 @@
 package org.example;
 
 import org.example.comparator.DataComparator;
+import org.example.comparator.DiffCache;
 import org.example.comparator.FileComparator;
 import org.example.comparator.ItemNameComparator;
 import org.example.comparator.JsonComparator;
@@ -9,6 +10,7 @@ import org.example.writer.DiffWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Paths;
 import java.util.Map;
 import java.util.List;
 
@@ -21,20 +23,32 @@ public class Main {
     private static final String OLD_DIR = "diff/old";
     private static final String NEW_DIR = "diff/new";
     private static final String OUTPUT_DIR = "diff/output";
+    private static final String CACHE_FILE = "diff/.cache/file-diffs.json";
+
+    /** Число потоков сравнения файлов: -Ddifftool.threads=N. */
+    private static final int THREADS = Integer.getInteger("difftool.threads", Runtime.getRuntime().availableProcessors());
+    /** Сколько мегабайт входных файлов можно сравнивать одновременно: -Ddifftool.memory-mb=N. */
+    private static final long MEMORY_MB = Long.getLong("difftool.memory-mb", Runtime.getRuntime().maxMemory() / 8 >> 20);
+    /** С какого размера JSON-файлы сравниваются потоково: -Ddifftool.json.streaming-mb=N. */
+    private static final long JSON_STREAMING_MB = Long.getLong("difftool.json.streaming-mb", 64);
+    /** Переиспользовать результаты для файлов, не изменившихся с прошлого запуска: -Ddifftool.cache=false отключает. */
+    private static final boolean USE_CACHE = !"false".equalsIgnoreCase(System.getProperty("difftool.cache"));
 
     public static void main(String[] args) {
         logger.info("Запуск инструмента сравнения директорий");
         logger.info("Старая директория: {}", OLD_DIR);
         logger.info("Новая директория: {}", NEW_DIR);
         logger.info("Выходная директория: {}", OUTPUT_DIR);
+        logger.info("Потоков сравнения: {}, бюджет памяти: {} MB", THREADS, MEMORY_MB);
 
         try {
             // Создаем компоненты
             List<DataComparator> comparators = List.of(
-                new JsonComparator(),
+                new JsonComparator(JSON_STREAMING_MB * 1024 * 1024),
                 new ItemNameComparator()
             );
-            FileComparator fileComparator = new FileComparator(comparators);
+            FileComparator fileComparator = new FileComparator(comparators, THREADS, MEMORY_MB * 1024 * 1024,
+                                                                 USE_CACHE ? DiffCache.load(Paths.get(CACHE_FILE)) : null);
             DiffWriter diffWriter = new DiffWriter();
 
             // Сравниваем директории
@@ -49,7 +63,7 @@ public class Main {
             diffWriter.writeResults(results, OUTPUT_DIR);
 
             // Выводим статистику
-            printStatistics(results);
+            printStatistics(results, fileComparator.getIdenticalFiles());
 
             logger.info("Сравнение завершено успешно");
 
@@ -61,8 +75,10 @@ public class Main {
 
     /**
      * Выводит статистику по результатам сравнения.
+     *
+     * @param identicalFiles сколько файлов совпали побайтно и не разбирались
      */
-    private static void printStatistics(Map<String, DiffResult> results) {
+    private static void printStatistics(Map<String, DiffResult> results, int identicalFiles) {
         int totalFiles = results.size();
         int filesWithChanges = 0;
         int totalAdded = 0;
@@ -98,6 +114,7 @@ public class Main {
         logger.info("=== Статистика сравнения ===");
         logger.info("Всего файлов обработано: {}", totalFiles);
         logger.info("Файлов с изменениями: {}", filesWithChanges);
+        logger.info("Файлов без изменений: {} (побайтно совпадают: {})", totalFiles - filesWithChanges, identicalFiles);
         logger.info("Добавлено элементов: {}", totalAdded);
         logger.info("Удалено элементов: {}", totalRemoved);
         logger.info("Изменено полей: {}", totalChanged);
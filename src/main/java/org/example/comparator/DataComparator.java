@@ -34,5 +34,15 @@ public interface DataComparator {
      * @return результат сравнения
      */
     DiffResult compareWithMissing(File existingFile, boolean isOld);
+
+    /**
+     * Ключ компаратора для {@link DiffCache}: включает настройки, от которых зависит результат,
+     * чтобы после их смены кеш не отдавал результаты, посчитанные с прежними настройками.
+     *
+     * @return имя компаратора и его настройки
+     */
+    default String cacheKey() {
+        return getClass().getSimpleName();
+    }
 }
 
@@ -0,0 +1,172 @@
+package org.example.comparator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.dto.DiffResult;
+import org.example.util.MappedInput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Кеш результатов сравнения между запусками: для каждого файла хранятся отпечатки OLD и NEW
+ * (размер, время изменения, SHA-256 содержимого) и результат предыдущего сравнения.
+ * <p>
+ * Пара файлов с теми же размерами и хешами, что в кеше, повторно не сравнивается.
+ * Хеш пересчитывается, только если у файла изменились размер или время изменения.
+ * В файл кеша сохраняются только файлы текущего запуска, поэтому удаленные файлы из него уходят.
+ */
+public class DiffCache {
+    private static final Logger logger = LoggerFactory.getLogger(DiffCache.class);
+
+    /** Меняется, когда меняется формат кеша или результаты компараторов. */
+    static final int VERSION = 1;
+    private static final int HASH_BUFFER = 64 * 1024;
+
+    private final Path file;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+    private DiffCache(Path file, Map<String, Entry> previous) {
+        this.file = file;
+        this.previous = previous;
+    }
+
+    /**
+     * Отпечаток файла. Файлы совпадают, если совпадают размер и хеш; время изменения
+     * нужно только для того, чтобы не хешировать неизмененные файлы.
+     */
+    public record Fingerprint(long size, long modified, String hash) {
+        boolean sameContent(Fingerprint other) {
+            return other != null && size == other.size && hash.equals(other.hash);
+        }
+    }
+
+    /**
+     * Запись кеша: ключ компаратора ({@link DataComparator#cacheKey()}), отпечатки OLD и NEW (null для отсутствующего файла) и результат.
+     */
+    public record Entry(String comparator, Fingerprint oldFile, Fingerprint newFile, DiffResult result) {
+        boolean matches(Entry other) {
+            return other != null && comparator.equals(other.comparator)
+                && sameContent(oldFile, other.oldFile) && sameContent(newFile, other.newFile);
+        }
+
+        private static boolean sameContent(Fingerprint a, Fingerprint b) {
+            return a == null ? b == null : a.sameContent(b);
+        }
+    }
+
+    private record CacheFile(int version, Map<String, Entry> entries) {
+    }
+
+    /**
+     * Загружает кеш. Отсутствующий, поврежденный или устаревший файл дает пустой кеш.
+     */
+    public static DiffCache load(Path file) {
+        Map<String, Entry> entries = Map.of();
+        if (Files.isRegularFile(file)) {
+            try {
+                CacheFile cached = new ObjectMapper().readValue(file.toFile(), CacheFile.class);
+                if (cached.version() == VERSION && cached.entries() != null) {
+                    entries = cached.entries();
+                } else {
+                    logger.info("Кеш сравнения {} устарел и будет пересоздан", file);
+                }
+            } catch (IOException e) {
+                logger.warn("Не удалось прочитать кеш сравнения {}: {}", file, e.getMessage());
+            }
+        }
+        logger.info("Кеш сравнения: {} файлов из предыдущего запуска", entries.size());
+        return new DiffCache(file, entries);
+    }
+
+    /**
+     * Отпечатки пары файлов для {@link #get} и {@link #put}; результат еще не заполнен.
+     *
+     * @throws UncheckedIOException если файл не удалось прочитать для хеша
+     */
+    public Entry fingerprint(String relativePath, DataComparator comparator, File oldFile, File newFile) {
+        Entry cached = previous.get(relativePath);
+        return new Entry(comparator.cacheKey(),
+                         fingerprint(oldFile, cached != null ? cached.oldFile() : null),
+                         fingerprint(newFile, cached != null ? cached.newFile() : null),
+                         null);
+    }
+
+    /**
+     * @return результат предыдущего сравнения, если файлы не изменились, иначе null
+     */
+    public DiffResult get(String relativePath, Entry key) {
+        Entry cached = previous.get(relativePath);
+        if (!key.matches(cached) || cached.result() == null) {
+            return null;
+        }
+        current.put(relativePath, new Entry(key.comparator(), key.oldFile(), key.newFile(), cached.result()));
+        return cached.result();
+    }
+
+    public void put(String relativePath, Entry key, DiffResult result) {
+        current.put(relativePath, new Entry(key.comparator(), key.oldFile(), key.newFile(), result));
+    }
+
+    /**
+     * Записывает кеш через временный файл, чтобы прерванный запуск не оставил поврежденный кеш.
+     */
+    public void save() {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try {
+                objectMapper.writeValue(temp.toFile(), new CacheFile(VERSION, new TreeMap<>(current)));
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            logger.info("Кеш сравнения сохранен: {} файлов", current.size());
+        } catch (IOException e) {
+            logger.warn("Не удалось сохранить кеш сравнения {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static Fingerprint fingerprint(File file, Fingerprint cached) {
+        if (!file.exists()) {
+            return null;
+        }
+        long size = file.length();
+        long modified = file.lastModified();
+        if (cached != null && cached.size() == size && cached.modified() == modified) {
+            return cached;
+        }
+        return new Fingerprint(size, modified, hash(file));
+    }
+
+    private static String hash(File file) {
+        try (InputStream input = MappedInput.openStream(file.toPath())) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[HASH_BUFFER];
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
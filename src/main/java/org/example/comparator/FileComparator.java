@@ -1,24 +1,74 @@
 package org.example.comparator;
 
 import org.example.dto.DiffResult;
+import org.example.util.MappedInput;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Класс для рекурсивного обхода директорий и сравнения файлов.
+ * <p>
+ * Файлы сравниваются параллельно в пуле из {@code threads} потоков. Чтобы несколько больших
+ * файлов не разбирались одновременно, параллельные сравнения ограничены суммарным размером
+ * входных файлов {@code memoryBudgetBytes}: файл больше бюджета сравнивается один.
+ * <p>
+ * Побайтно совпадающие OLD и NEW не разбираются: они считаются файлами без изменений
+ * с пустым результатом. С {@link DiffCache} пары файлов, не изменившиеся с прошлого запуска, не сравниваются:
+ * берется результат из кеша.
  */
 public class FileComparator {
     private static final Logger logger = LoggerFactory.getLogger(FileComparator.class);
+    /** Единица учета бюджета памяти: размеры файлов округляются вверх до килобайта. */
+    private static final int BUDGET_UNIT = 1024;
+
     private final List<DataComparator> comparators;
+    private final int threads;
+    private final int budgetUnits;
+    private final DiffCache cache;
+    private volatile int identicalFiles;
 
     public FileComparator(List<DataComparator> comparators) {
+        this(comparators, Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory() / 8);
+    }
+
+    /**
+     * @param threads           число потоков сравнения
+     * @param memoryBudgetBytes сколько байт входных файлов (OLD + NEW) можно сравнивать одновременно
+     */
+    public FileComparator(List<DataComparator> comparators, int threads, long memoryBudgetBytes) {
+        this(comparators, threads, memoryBudgetBytes, null);
+    }
+
+    /**
+     * @param cache кеш результатов предыдущих запусков или null
+     */
+    public FileComparator(List<DataComparator> comparators, int threads, long memoryBudgetBytes, DiffCache cache) {
         this.comparators = comparators;
+        this.threads = Math.max(1, threads);
+        this.budgetUnits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudgetBytes / BUDGET_UNIT));
+        this.cache = cache;
+    }
+
+    /**
+     * @return сколько файлов последнего {@link #compareDirectories} совпали побайтно и не разбирались
+     */
+    public int getIdenticalFiles() {
+        return identicalFiles;
     }
 
     /**
@@ -26,10 +76,10 @@ public class FileComparator {
      *
      * @param oldDir путь к старой директории
      * @param newDir путь к новой директории
-     * @return карта относительных путей файлов к результатам сравнения
+     * @return карта относительных путей файлов к результатам сравнения, по возрастанию пути
      */
     public Map<String, DiffResult> compareDirectories(String oldDir, String newDir) {
-        Map<String, DiffResult> results = new HashMap<>();
+        Map<String, DiffResult> results = new LinkedHashMap<>();
 
         try {
             Path oldPath = Paths.get(oldDir);
@@ -41,7 +91,7 @@ public class FileComparator {
             }
 
             // Собираем все файлы из обеих директорий
-            Set<String> allFiles = new HashSet<>();
+            Set<String> allFiles = new TreeSet<>();
             if (Files.exists(oldPath)) {
                 collectSupportedFiles(oldPath, oldPath, allFiles);
             }
@@ -49,42 +99,178 @@ public class FileComparator {
                 collectSupportedFiles(newPath, newPath, allFiles);
             }
 
-            // Сравниваем каждый файл
-            for (String relativePath : allFiles) {
-                File oldFile = oldPath.resolve(relativePath).toFile();
-                File newFile = newPath.resolve(relativePath).toFile();
+            // Сравниваем файлы параллельно
+            results = compareFiles(oldPath, newPath, allFiles);
+            if (cache != null) {
+                cache.save();
+            }
 
-                DataComparator comparator = resolveComparator(oldFile, newFile);
-                if (comparator == null) {
-                    logger.warn("Нет подходящего компаратора для файла: {}", relativePath);
-                    continue;
-                }
+        } catch (Exception e) {
+            logger.error("Ошибка при сравнении директорий: {}", e.getMessage(), e);
+        }
+
+        return results;
+    }
 
-                DiffResult result;
-
-                if (!oldFile.exists() && newFile.exists()) {
-                    // Файл добавлен
-                    result = comparator.compareWithMissing(newFile, false);
-                } else if (oldFile.exists() && !newFile.exists()) {
-                    // Файл удален
-                    result = comparator.compareWithMissing(oldFile, true);
-                } else if (oldFile.exists() && newFile.exists()) {
-                    // Оба файла существуют - сравниваем
-                    result = comparator.compare(oldFile, newFile);
-                } else {
-                    // Оба файла не существуют (не должно произойти)
-                    continue;
+    /**
+     * Сравнивает файлы в пуле и возвращает результаты в порядке {@code relativePaths}.
+     * Ошибка сравнения одного файла записывается в лог, остальные файлы сравниваются дальше.
+     */
+    private Map<String, DiffResult> compareFiles(Path oldPath, Path newPath, Set<String> relativePaths)
+        throws InterruptedException {
+        Map<String, DiffResult> completed = new ConcurrentHashMap<>();
+        Semaphore budget = new Semaphore(budgetUnits, true);
+        AtomicInteger reused = new AtomicInteger();
+        AtomicInteger identical = new AtomicInteger();
+        AtomicInteger threadNumber = new AtomicInteger();
+        int poolSize = Math.min(threads, Math.max(1, relativePaths.size()));
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize, task -> {
+            Thread thread = new Thread(task, "file-compare-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Map<String, Future<?>> tasks = new LinkedHashMap<>();
+            for (String relativePath : relativePaths) {
+                File oldFile = oldPath.resolve(relativePath).toFile();
+                File newFile = newPath.resolve(relativePath).toFile();
+                tasks.put(relativePath, pool.submit(() -> {
+                    DataComparator comparator = resolveComparator(oldFile, newFile);
+                    if (comparator == null) {
+                        logger.warn("Нет подходящего компаратора для файла: {}", relativePath);
+                        return;
+                    }
+                    DiffCache.Entry key = fingerprint(relativePath, comparator, oldFile, newFile);
+                    if (isIdentical(oldFile, newFile, key)) {
+                        DiffResult unchanged = new DiffResult();
+                        completed.put(relativePath, unchanged);
+                        if (key != null) {
+                            cache.put(relativePath, key, unchanged);
+                        }
+                        identical.incrementAndGet();
+                        logger.debug("Файл не изменился (побайтно): {}", relativePath);
+                        return;
+                    }
+                    if (key != null) {
+                        DiffResult cached = cache.get(relativePath, key);
+                        if (cached != null) {
+                            completed.put(relativePath, cached);
+                            reused.incrementAndGet();
+                            return;
+                        }
+                    }
+                    int units = unitsFor(oldFile, newFile);
+                    budget.acquireUninterruptibly(units);
+                    try {
+                        DiffResult result = compareFile(relativePath, comparator, oldFile, newFile);
+                        if (result != null) {
+                            completed.put(relativePath, result);
+                            if (key != null) {
+                                cache.put(relativePath, key, result);
+                            }
+                        }
+                    } finally {
+                        budget.release(units);
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<?>> task : tasks.entrySet()) {
+                try {
+                    task.getValue().get();
+                } catch (ExecutionException e) {
+                    logger.error("Ошибка при сравнении файла {}: {}", task.getKey(), e.getCause().getMessage(),
+                                 e.getCause());
                 }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        identicalFiles = identical.get();
+        logger.info("Побайтно совпадают: {} из {} файлов", identicalFiles, relativePaths.size());
+        if (cache != null) {
+            logger.info("Без изменений с прошлого запуска (из кеша): {} из {} файлов", reused.get(), relativePaths.size());
+        }
 
+        Map<String, DiffResult> results = new LinkedHashMap<>();
+        for (String relativePath : relativePaths) {
+            DiffResult result = completed.get(relativePath);
+            if (result != null) {
                 results.put(relativePath, result);
-                logger.info("Обработан файл: {}", relativePath);
             }
+        }
+        return results;
+    }
 
-        } catch (Exception e) {
-            logger.error("Ошибка при сравнении директорий: {}", e.getMessage(), e);
+    /**
+     * Сравнивает одну пару файлов.
+     *
+     * @return результат или null, если нет ни одного из файлов
+     */
+    private DiffResult compareFile(String relativePath, DataComparator comparator, File oldFile, File newFile) {
+        DiffResult result;
+
+        if (!oldFile.exists() && newFile.exists()) {
+            // Файл добавлен
+            result = comparator.compareWithMissing(newFile, false);
+        } else if (oldFile.exists() && !newFile.exists()) {
+            // Файл удален
+            result = comparator.compareWithMissing(oldFile, true);
+        } else if (oldFile.exists() && newFile.exists()) {
+            // Оба файла существуют - сравниваем
+            result = comparator.compare(oldFile, newFile);
+        } else {
+            // Оба файла не существуют (не должно произойти)
+            return null;
         }
 
-        return results;
+        logger.info("Обработан файл: {}", relativePath);
+        return result;
+    }
+
+    /**
+     * Отпечатки пары файлов для кеша. Если файл не удалось прочитать для хеша, пара
+     * сравнивается без кеша, а не выпадает из результата.
+     *
+     * @return ключ кеша или null, если кеш выключен или отпечаток не получен
+     */
+    private DiffCache.Entry fingerprint(String relativePath, DataComparator comparator, File oldFile, File newFile) {
+        if (cache == null) {
+            return null;
+        }
+        try {
+            return cache.fingerprint(relativePath, comparator, oldFile, newFile);
+        } catch (UncheckedIOException e) {
+            logger.warn("Не удалось посчитать отпечаток {}, сравнение без кеша: {}", relativePath,
+                        e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Совпадают ли OLD и NEW побайтно. С кешем сравниваются уже посчитанные отпечатки,
+     * без кеша - размеры и содержимое файлов. Ошибка чтения означает обычное сравнение.
+     */
+    private boolean isIdentical(File oldFile, File newFile, DiffCache.Entry key) {
+        if (key != null) {
+            return key.oldFile() != null && key.oldFile().sameContent(key.newFile());
+        }
+        if (!oldFile.isFile() || !newFile.isFile() || oldFile.length() != newFile.length()) {
+            return false;
+        }
+        try {
+            return MappedInput.sameContent(oldFile.toPath(), newFile.toPath());
+        } catch (IOException e) {
+            logger.warn("Не удалось побайтно сравнить {} и {}: {}", oldFile, newFile, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Доля бюджета памяти на сравнение пары файлов: их суммарный размер, но не больше всего бюджета.
+     */
+    private int unitsFor(File oldFile, File newFile) {
+        long bytes = oldFile.length() + newFile.length();
+        return (int) Math.max(1, Math.min(budgetUnits, (bytes + BUDGET_UNIT - 1) / BUDGET_UNIT));
     }
 
     /**
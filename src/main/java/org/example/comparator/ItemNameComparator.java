@@ -1,14 +1,14 @@
 package org.example.comparator;
 
 import org.example.dto.DiffResult;
+import org.example.util.FieldTokenizer;
+import org.example.util.MappedInput;
+import org.example.util.SymbolTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.util.*;
 
 /**
@@ -82,98 +82,17 @@ public class ItemNameComparator implements DataComparator {
     }
 
     private Map<String, Map<String, String>> parseFile(File file) {
-        Map<String, Map<String, String>> blocks = new LinkedHashMap<>();
-
         if (file == null || !file.exists()) {
-            return blocks;
+            return new LinkedHashMap<>();
         }
 
-        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
-            Map<String, String> currentBlock = null;
-            String currentId = null;
-            String line;
-            int lineNumber = 0;
-
-            while ((line = reader.readLine()) != null) {
-                lineNumber++;
-                if (line.isBlank()) {
-                    continue;
-                }
-
-                String[] tokens = line.split("\\t");
-                for (String rawToken : tokens) {
-                    String token = rawToken.trim();
-                    if (token.isEmpty()) {
-                        continue;
-                    }
-
-                    if (token.equals(BLOCK_START)) {
-                        currentBlock = new LinkedHashMap<>();
-                        currentId = null;
-                        continue;
-                    }
-
-                    if (token.equals(BLOCK_END)) {
-                        if (currentBlock != null) {
-                            if (currentId == null) {
-                                logger.warn("Пропущен блок без id в файле {} (строка {})",
-                                    file.getName(), lineNumber);
-                            } else {
-                                blocks.put(currentId, currentBlock);
-                            }
-                        }
-                        currentBlock = null;
-                        currentId = null;
-                        continue;
-                    }
-
-                    if (currentBlock != null) {
-                        processToken(token, currentBlock);
-                        if (currentBlock.containsKey(ID_FIELD)) {
-                            currentId = currentBlock.get(ID_FIELD);
-                        }
-                    }
-                }
-            }
-
-            // Закрываем висящий блок (если файл не завершился item_name_end)
-            if (currentBlock != null) {
-                if (currentId == null) {
-                    logger.warn("Пропущен блок без id в файле {} (конец файла)", file.getName());
-                } else {
-                    blocks.put(currentId, currentBlock);
-                }
-            }
-
+        BlockCollector collector = new BlockCollector(file.getName());
+        try {
+            MappedInput.forEachLine(file.toPath(), collector);
         } catch (IOException e) {
             logger.warn("Не удалось прочитать файл {}: {}", file.getName(), e.getMessage());
         }
-
-        return blocks;
-    }
-
-    private void processToken(String token, Map<String, String> block) {
-        int eqIndex = token.indexOf('=');
-        if (eqIndex < 0) {
-            return;
-        }
-
-        String key = token.substring(0, eqIndex).trim();
-        String value = token.substring(eqIndex + 1).trim();
-        value = stripBrackets(value);
-        block.put(key, value);
-    }
-
-    private String stripBrackets(String value) {
-        if (value == null) {
-            return null;
-        }
-
-        String trimmed = value.trim();
-        if (trimmed.startsWith("[") && trimmed.endsWith("]") && trimmed.length() >= 2) {
-            return trimmed.substring(1, trimmed.length() - 1);
-        }
-        return trimmed;
+        return collector.finish();
     }
 
     private void compareFields(String id,
@@ -225,5 +144,69 @@ public class ItemNameComparator implements DataComparator {
             }
         }
     }
-}
 
+    /**
+     * Собирает блоки item_name из строк файла. Строки приходят диапазонами декодированного
+     * буфера, строки Java создаются только для сохраняемых ключей и значений.
+     */
+    private static final class BlockCollector implements MappedInput.LineHandler {
+        private final String fileName;
+        private final Map<String, Map<String, String>> blocks = new LinkedHashMap<>();
+        private final FieldTokenizer tokenizer = new FieldTokenizer();
+        private final SymbolTable keys = new SymbolTable();
+        private Map<String, String> currentBlock;
+        private String currentId;
+        private int lineNumber;
+
+        BlockCollector(String fileName) {
+            this.fileName = fileName;
+        }
+
+        @Override
+        public void line(CharSequence text, int start, int end) {
+            lineNumber++;
+            tokenizer.reset(text, start, end);
+            while (tokenizer.next()) {
+                if (tokenizer.tokenEquals(BLOCK_START)) {
+                    currentBlock = new LinkedHashMap<>();
+                    currentId = null;
+                    continue;
+                }
+
+                if (tokenizer.tokenEquals(BLOCK_END)) {
+                    if (currentBlock != null) {
+                        if (currentId == null) {
+                            logger.warn("Пропущен блок без id в файле {} (строка {})", fileName, lineNumber);
+                        } else {
+                            blocks.put(currentId, currentBlock);
+                        }
+                    }
+                    currentBlock = null;
+                    currentId = null;
+                    continue;
+                }
+
+                if (currentBlock != null && tokenizer.hasValue()) {
+                    String value = tokenizer.unbracketedValue();
+                    currentBlock.put(tokenizer.key(keys), value);
+                    if (tokenizer.keyEquals(ID_FIELD)) {
+                        currentId = value;
+                    }
+                }
+            }
+        }
+
+        Map<String, Map<String, String>> finish() {
+            // Закрываем висящий блок (если файл не завершился item_name_end)
+            if (currentBlock != null) {
+                if (currentId == null) {
+                    logger.warn("Пропущен блок без id в файле {} (конец файла)", fileName);
+                } else {
+                    blocks.put(currentId, currentBlock);
+                }
+                currentBlock = null;
+            }
+            return blocks;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package org.example.comparator;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.util.MappedInput;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+
+/**
+ * Индекс JSON-файла с массивом объектов в корне, построенный потоковым парсером без дерева.
+ * <p>
+ * Для каждого объекта массива в примитивных массивах хранятся 64-битный ключ и байтовый
+ * диапазон в файле; сами id и объекты в памяти не держатся. Ключ - хеш {@code id}, взятого по тем
+ * же правилам, что в {@link JsonComparator}, а для объекта без id - хеш содержимого, не зависящий
+ * от порядка полей, как и равенство {@link JsonNode}.
+ * <p>
+ * Ключ только отбирает кандидатов: совпадение ключей подтверждается чтением обоих элементов
+ * ({@link #read}) и сравнением id, а без id - содержимого, так что коллизия хешей не склеивает
+ * разные объекты. Поэтому в таблице может быть несколько элементов с одним ключом.
+ * <p>
+ * Элементы перебираются в порядке файла; при повторе id действует последний элемент.
+ */
+final class JsonArrayIndex implements Closeable {
+    private static final String ID_FIELD = "id";
+    private static final long NO_ID_SEED = 0x3C6EF372FE94F82BL;
+
+    private final FileChannel channel;
+    private final ObjectMapper objectMapper;
+    private final int count;
+    private final long[] keys;
+    private final long[] starts;
+    private final int[] lengths;
+    /** Открытая адресация: ключ -> номер последнего элемента с этим id, -1 - пусто. */
+    private final int[] slots;
+    /** Элементы, которые остались в таблице: последние со своим id. */
+    private final BitSet live;
+
+    /**
+     * @throws IOException если не удалось перечитать элементы с совпавшими ключами
+     */
+    private JsonArrayIndex(FileChannel channel, ObjectMapper objectMapper, int count,
+                           long[] keys, long[] starts, int[] lengths) throws IOException {
+        this.channel = channel;
+        this.objectMapper = objectMapper;
+        this.count = count;
+        this.keys = keys;
+        this.starts = starts;
+        this.lengths = lengths;
+        this.slots = new int[Math.max(2, Integer.highestOneBit(Math.max(1, count)) << 2)];
+        Arrays.fill(slots, -1);
+        for (int element = 0; element < count; element++) {
+            insert(element);
+        }
+        this.live = new BitSet(count);
+        for (int element : slots) {
+            if (element >= 0) {
+                live.set(element);
+            }
+        }
+    }
+
+    /**
+     * Строит индекс файла.
+     *
+     * @return индекс или null, если в корне не массив или парсер не дает байтовых позиций
+     *         (например, файл в UTF-16)
+     * @throws IOException если файл не читается или JSON некорректен
+     */
+    static JsonArrayIndex build(File file, ObjectMapper objectMapper) throws IOException {
+        long[] keys = new long[1024];
+        long[] starts = new long[1024];
+        int[] lengths = new int[1024];
+        int count = 0;
+
+        try (InputStream input = MappedInput.openStream(file.toPath());
+             JsonParser parser = objectMapper.getFactory().createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return null;
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                if (token != JsonToken.START_OBJECT) {
+                    // Как и при сравнении деревом, элементы-не-объекты не учитываются
+                    parser.skipChildren();
+                    continue;
+                }
+                long start = parser.currentTokenLocation().getByteOffset();
+                if (start < 0) {
+                    return null;
+                }
+                ElementHash element = hashElement(parser);
+                long length = parser.currentLocation().getByteOffset() - start;
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException("Слишком большой элемент массива в " + file.getName() + ": " + length + " байт");
+                }
+                if (count == keys.length) {
+                    keys = Arrays.copyOf(keys, count * 2);
+                    starts = Arrays.copyOf(starts, count * 2);
+                    lengths = Arrays.copyOf(lengths, count * 2);
+                }
+                // Без id объект узнается только по содержимому
+                keys[count] = element.id() != null ? stringHash(element.id()) : mix(element.hash() ^ NO_ID_SEED);
+                starts[count] = start;
+                lengths[count] = (int) length;
+                count++;
+            }
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new JsonArrayIndex(channel, objectMapper, count, keys, starts, lengths);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return число элементов-объектов, включая повторы id
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * @return действует ли элемент: он последний со своим id
+     */
+    boolean isLive(int element) {
+        return live.get(element);
+    }
+
+    /**
+     * Элемент другого индекса с тем же id, что у элемента этого индекса (без id - с тем же содержимым).
+     * Каждый кандидат с совпавшим ключом перечитывается и сверяется с {@code node}.
+     *
+     * @param node содержимое элемента, уже прочитанное через {@link #read}
+     * @return найденный элемент вместе с его содержимым или null
+     */
+    Match find(int element, JsonNode node, JsonArrayIndex other) throws IOException {
+        long key = keys[element];
+        int mask = other.slots.length - 1;
+        for (int slot = (int) key & mask; other.slots[slot] >= 0; slot = (slot + 1) & mask) {
+            int candidate = other.slots[slot];
+            if (other.keys[candidate] == key) {
+                JsonNode candidateNode = other.read(candidate);
+                if (sameIdentity(node, candidateNode)) {
+                    return new Match(candidate, candidateNode);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Элемент другого индекса и его содержимое.
+     */
+    record Match(int element, JsonNode node) {
+    }
+
+    /**
+     * Кладет элемент в таблицу, вытесняя предыдущий элемент с тем же id. Элемент с тем же ключом,
+     * но другим id (коллизия) остается, новый занимает следующий свободный слот.
+     */
+    private void insert(int element) throws IOException {
+        long key = keys[element];
+        JsonNode node = null;
+        int mask = slots.length - 1;
+        int slot = (int) key & mask;
+        for (; slots[slot] >= 0; slot = (slot + 1) & mask) {
+            int previous = slots[slot];
+            if (keys[previous] == key) {
+                if (node == null) {
+                    node = read(element);
+                }
+                if (sameIdentity(node, read(previous))) {
+                    break;
+                }
+            }
+        }
+        slots[slot] = element;
+    }
+
+    /**
+     * Один ли это объект: одинаковый id, а без id у обоих - одинаковое содержимое.
+     */
+    private static boolean sameIdentity(JsonNode a, JsonNode b) {
+        String id = JsonComparator.objectId(a);
+        String otherId = JsonComparator.objectId(b);
+        if (id != null || otherId != null) {
+            return Objects.equals(id, otherId);
+        }
+        return a.equals(b);
+    }
+
+    /**
+     * Читает элемент из файла.
+     */
+    JsonNode read(int element) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(lengths[element]);
+        long position = starts[element];
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, position + bytes.position()) < 0) {
+                throw new IOException("Файл изменился во время сравнения");
+            }
+        }
+        return objectMapper.readTree(bytes.array());
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private record ElementHash(String id, long hash) {
+    }
+
+    /**
+     * Хеширует объект верхнего уровня (парсер стоит на START_OBJECT) и заодно находит его id.
+     */
+    private static ElementHash hashElement(JsonParser parser) throws IOException {
+        String id = null;
+        long hash = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (ID_FIELD.equals(name)) {
+                if (value == JsonToken.VALUE_STRING) {
+                    id = parser.getText();
+                } else if (value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT) {
+                    id = String.valueOf(parser.getValueAsLong());
+                }
+            }
+            hash += memberHash(name, hashValue(parser));
+        }
+        return new ElementHash(id, mix(hash ^ 0x6A09E667F3BCC909L));
+    }
+
+    /**
+     * Хеш значения, на первом токене которого стоит парсер; после вызова парсер стоит на последнем токене.
+     * Поля объекта складываются (порядок не важен), элементы массива - последовательно.
+     */
+    private static long hashValue(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        switch (token) {
+            case START_OBJECT -> {
+                long hash = 0;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    parser.nextToken();
+                    hash += memberHash(name, hashValue(parser));
+                }
+                return mix(hash ^ 0x6A09E667F3BCC909L);
+            }
+            case START_ARRAY -> {
+                long hash = 0xBB67AE8584CAA73BL;
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    hash = mix(hash * 31 + hashValue(parser));
+                }
+                return hash;
+            }
+            case VALUE_NUMBER_FLOAT -> {
+                // По значению, как DoubleNode.equals: 1.0 и 1.00 - одно число
+                return mix(token.ordinal() * 0x9E3779B97F4A7C15L ^ Double.doubleToLongBits(parser.getDoubleValue()));
+            }
+            case VALUE_STRING, VALUE_NUMBER_INT -> {
+                long hash = token.ordinal();
+                char[] chars = parser.getTextCharacters();
+                int end = parser.getTextOffset() + parser.getTextLength();
+                for (int i = parser.getTextOffset(); i < end; i++) {
+                    hash = hash * 0x100000001B3L ^ chars[i];
+                }
+                return mix(hash);
+            }
+            default -> {
+                return mix(token.ordinal() * 0x9E3779B97F4A7C15L);
+            }
+        }
+    }
+
+    private static long stringHash(String value) {
+        long hash = 0xA54FF53A5F1D36F1L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = hash * 0x100000001B3L ^ value.charAt(i);
+        }
+        return mix(hash ^ value.length());
+    }
+
+    private static long memberHash(String name, long valueHash) {
+        return mix(((long) name.hashCode() << 32 | name.length()) * 0x9E3779B97F4A7C15L ^ valueHash);
+    }
+
+    /**
+     * Финализатор SplitMix64.
+     */
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+}
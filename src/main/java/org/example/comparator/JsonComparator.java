@@ -3,24 +3,40 @@ package org.example.comparator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.example.dto.DiffResult;
+import org.example.util.MappedInput;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
 
 /**
  * Класс для сравнения JSON-файлов.
  * Поддерживает сравнение объектов по ID и выявление различий в полях.
+ * <p>
+ * Файлы от {@code streamingThresholdBytes} с массивом в корне сравниваются потоково
+ * ({@link JsonArrayIndex}): в памяти держатся только хеши и позиции элементов,
+ * а сами элементы читаются из файла по одному (или по паре) и сразу отпускаются.
  */
 public class JsonComparator implements DataComparator {
     private static final Logger logger = LoggerFactory.getLogger(JsonComparator.class);
     private static final String ID_FIELD = "id";
+    private static final long DEFAULT_STREAMING_THRESHOLD = 64L * 1024 * 1024;
     private final ObjectMapper objectMapper;
+    private final long streamingThresholdBytes;
 
     public JsonComparator() {
+        this(DEFAULT_STREAMING_THRESHOLD);
+    }
+
+    /**
+     * @param streamingThresholdBytes размер файла, с которого сравнение идет потоково
+     */
+    public JsonComparator(long streamingThresholdBytes) {
         this.objectMapper = new ObjectMapper();
+        this.streamingThresholdBytes = streamingThresholdBytes;
     }
 
     /**
@@ -35,8 +51,24 @@ public class JsonComparator implements DataComparator {
         return fileName != null && fileName.toLowerCase(Locale.ROOT).endsWith(".json");
     }
 
+    /**
+     * От порога зависит, сравнивается файл потоково или целиком, а результаты этих путей
+     * не обязаны совпадать байт в байт, поэтому порог входит в ключ кеша.
+     */
+    @Override
+    public String cacheKey() {
+        return getClass().getSimpleName() + "(streaming=" + streamingThresholdBytes + ")";
+    }
+
     @Override
     public DiffResult compare(File oldFile, File newFile) {
+        if (Math.max(oldFile.length(), newFile.length()) >= streamingThresholdBytes) {
+            DiffResult streamed = compareStreaming(oldFile, newFile);
+            if (streamed != null) {
+                return streamed;
+            }
+        }
+
         DiffResult result = new DiffResult();
 
         try {
@@ -93,6 +125,55 @@ public class JsonComparator implements DataComparator {
         return result;
     }
 
+    /**
+     * Потоковое сравнение массивов объектов. Результат тот же, что у сравнения деревом,
+     * но элементы перечисляются в порядке файлов.
+     *
+     * @return результат или null, если файлы нельзя сравнить потоково (в корне не массив,
+     *         некорректный JSON, нет байтовых позиций) - тогда они сравниваются деревом
+     */
+    private DiffResult compareStreaming(File oldFile, File newFile) {
+        try (JsonArrayIndex oldIndex = JsonArrayIndex.build(oldFile, objectMapper);
+             JsonArrayIndex newIndex = oldIndex != null ? JsonArrayIndex.build(newFile, objectMapper) : null) {
+            if (newIndex == null) {
+                return null;
+            }
+            logger.info("Потоковое сравнение {}: OLD элементов={}, NEW элементов={}",
+                newFile.getName(), oldIndex.size(), newIndex.size());
+            DiffResult result = new DiffResult();
+            BitSet matched = new BitSet(newIndex.size());
+
+            // Находим удаленные и измененные элементы; в памяти одновременно только одна пара
+            for (int element = 0; element < oldIndex.size(); element++) {
+                if (!oldIndex.isLive(element)) {
+                    continue;
+                }
+                JsonNode oldNode = oldIndex.read(element);
+                JsonArrayIndex.Match match = oldIndex.find(element, oldNode, newIndex);
+                if (match == null) {
+                    result.getRemoved().add(convertToObject(oldNode));
+                } else {
+                    matched.set(match.element());
+                    if (!oldNode.equals(match.node())) {
+                        compareObjects(oldNode, match.node(), result, objectId(oldNode));
+                    }
+                }
+            }
+
+            // Находим добавленные элементы: действующие элементы NEW без пары в OLD
+            for (int element = 0; element < newIndex.size(); element++) {
+                if (newIndex.isLive(element) && !matched.get(element)) {
+                    result.getAdded().add(convertToObject(newIndex.read(element)));
+                }
+            }
+            return result;
+        } catch (IOException e) {
+            logger.warn("Потоковое сравнение {} и {} не удалось, сравниваю целиком: {}",
+                oldFile.getName(), newFile.getName(), e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Сравнивает два JSON-файла, когда один из них отсутствует.
      */
@@ -128,8 +209,8 @@ public class JsonComparator implements DataComparator {
             return null;
         }
 
-        try {
-            return objectMapper.readTree(file);
+        try (InputStream input = MappedInput.openStream(file.toPath())) {
+            return objectMapper.readTree(input);
         } catch (IOException e) {
             logger.warn("Не удалось распарсить JSON-файл {}: {}", file.getName(), e.getMessage());
             return null;
@@ -173,21 +254,28 @@ public class JsonComparator implements DataComparator {
 
         for (JsonNode node : array) {
             if (node.isObject()) {
-                JsonNode idNode = node.get(ID_FIELD);
-                if (idNode != null && idNode.isTextual()) {
-                    map.put(idNode.asText(), node);
-                } else if (idNode != null && idNode.isNumber()) {
-                    map.put(String.valueOf(idNode.asLong()), node);
-                } else {
-                    // Если нет ID, используем хеш как ключ
-                    map.put(String.valueOf(node.hashCode()), node);
-                }
+                String id = objectId(node);
+                // Если нет ID, используем хеш как ключ
+                map.put(id != null ? id : String.valueOf(node.hashCode()), node);
             }
         }
 
         return map;
     }
 
+    /**
+     * ID объекта: текстовый или числовой (целая часть) {@code id}, иначе null.
+     */
+    static String objectId(JsonNode node) {
+        JsonNode idNode = node.get(ID_FIELD);
+        if (idNode != null && idNode.isTextual()) {
+            return idNode.asText();
+        } else if (idNode != null && idNode.isNumber()) {
+            return String.valueOf(idNode.asLong());
+        }
+        return null;
+    }
+
     /**
      * Сравнивает два объекта по полям.
      */
@@ -0,0 +1,46 @@
+package org.example.difftool.config;
+
+import org.example.difftool.service.CompactDiffWriter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+
+/**
+ * Отдает ответы с записями diff в компактном двоичном формате, если клиент прислал
+ * {@code Accept: application/vnd.difftool.diff}. Только запись: запросы остаются в JSON.
+ */
+public class CompactDiffMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+    public static final MediaType COMPACT_DIFF = MediaType.parseMediaType(CompactDiffWriter.MEDIA_TYPE);
+
+    private final CompactDiffWriter writer;
+
+    public CompactDiffMessageConverter(CompactDiffWriter writer) {
+        super(COMPACT_DIFF);
+        this.writer = writer;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return writer.supports(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Компактный формат diff поддерживается только для ответов", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Object payload, HttpOutputMessage outputMessage) throws IOException {
+        writer.write(payload, outputMessage.getBody());
+    }
+}
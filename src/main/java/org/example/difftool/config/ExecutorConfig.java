@@ -0,0 +1,49 @@
+package org.example.difftool.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пулы потоков для обработки загрузок.
+ */
+@Configuration
+public class ExecutorConfig {
+
+    public static final String UPLOAD_EXECUTOR = "uploadExecutor";
+    public static final String PARSE_POOL = "parsePool";
+
+    /**
+     * Ограниченный пул для параллельного парсинга OLD и NEW файлов.
+     * Парсинг упирается в CPU, поэтому размер по умолчанию равен числу ядер.
+     */
+    @Bean(name = UPLOAD_EXECUTOR, destroyMethod = "shutdown")
+    public ExecutorService uploadExecutor(@Value("${difftool.upload.parse-threads:0}") int threads) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return Executors.newFixedThreadPool(size, namedDaemonThreads("upload-parse-"));
+    }
+
+    /**
+     * Пул ForkJoin для CPU-задач внутри одного файла (чанки BLOCK-парсера, диапазоны строк diff).
+     */
+    @Bean(name = PARSE_POOL, destroyMethod = "shutdown")
+    public ForkJoinPool parsePool(@Value("${difftool.parse.parallelism:0}") int parallelism) {
+        int size = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(size);
+    }
+
+    private static ThreadFactory namedDaemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
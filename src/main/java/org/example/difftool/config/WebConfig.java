@@ -0,0 +1,30 @@
+package org.example.difftool.config;
+
+import org.example.difftool.service.CompactDiffWriter;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Дополнительные форматы ответов.
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final CompactDiffWriter compactDiffWriter;
+
+    public WebConfig(CompactDiffWriter compactDiffWriter) {
+        this.compactDiffWriter = compactDiffWriter;
+    }
+
+    /**
+     * Компактный конвертер добавляется в конец: клиенты без явного Accept по-прежнему
+     * получают JSON, двоичный формат выбирается только явным Accept.
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new CompactDiffMessageConverter(compactDiffWriter));
+    }
+}
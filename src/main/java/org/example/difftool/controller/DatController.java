@@ -1,28 +1,56 @@
 package org.example.difftool.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import org.example.difftool.config.ExecutorConfig;
 import org.example.difftool.model.*;
+import org.example.difftool.service.ChangeGroupService;
 import org.example.difftool.service.DatParser;
+import org.example.difftool.service.DiffQueryService;
 import org.example.difftool.service.DiffService;
+import org.example.difftool.service.DiffSessionStore;
 import org.example.difftool.service.ExportService;
+import org.example.difftool.service.MergeService;
+import org.example.difftool.service.SearchService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.GONE;
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
 
 @RestController
 @CrossOrigin(origins = "*")
@@ -33,53 +61,77 @@ public class DatController {
     private final DatParser datParser;
     private final DiffService diffService;
     private final ExportService exportService;
+    private final MergeService mergeService;
+    private final DiffSessionStore diffSessionStore;
+    private final DiffQueryService diffQueryService;
+    private final SearchService searchService;
+    private final ChangeGroupService changeGroupService;
+    private final ExecutorService uploadExecutor;
+    private final ObjectMapper objectMapper;
+    private final long uploadStreamTimeoutMs;
+    private final long exportTimeoutMs;
 
     public DatController(DatParser datParser,
                          DiffService diffService,
-                         ExportService exportService) {
+                         ExportService exportService,
+                         MergeService mergeService,
+                         DiffSessionStore diffSessionStore,
+                         DiffQueryService diffQueryService,
+                         SearchService searchService,
+                         ChangeGroupService changeGroupService,
+                         @Qualifier(ExecutorConfig.UPLOAD_EXECUTOR) ExecutorService uploadExecutor,
+                         ObjectMapper objectMapper,
+                         @Value("${difftool.upload.stream-timeout-ms:1800000}") long uploadStreamTimeoutMs,
+                         @Value("${difftool.export.timeout-ms:0}") long exportTimeoutMs) {
         this.datParser = datParser;
         this.diffService = diffService;
         this.exportService = exportService;
+        this.mergeService = mergeService;
+        this.diffSessionStore = diffSessionStore;
+        this.diffQueryService = diffQueryService;
+        this.searchService = searchService;
+        this.changeGroupService = changeGroupService;
+        this.uploadExecutor = uploadExecutor;
+        this.objectMapper = objectMapper;
+        this.uploadStreamTimeoutMs = uploadStreamTimeoutMs;
+        this.exportTimeoutMs = exportTimeoutMs;
     }
 
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public UploadResponse upload(@RequestParam("old") MultipartFile oldFile,
-                                 @RequestParam("new") MultipartFile newFile) throws IOException {
+                                 @RequestParam("new") MultipartFile newFile,
+                                 @RequestParam(value = "format", required = false) String format,
+                                 @RequestParam(value = "changesOnly", defaultValue = "false") boolean changesOnly,
+                                 @RequestParam(value = "paged", defaultValue = "false") boolean paged) throws IOException {
         logger.info("=== Начало обработки upload ===");
-        logger.info("OLD файл: name={}, size={}", oldFile != null ? oldFile.getOriginalFilename() : "null", 
-                    oldFile != null ? oldFile.getSize() : 0);
-        logger.info("NEW файл: name={}, size={}", newFile != null ? newFile.getOriginalFilename() : "null",
-                    newFile != null ? newFile.getSize() : 0);
-
-        if (oldFile == null || newFile == null || oldFile.isEmpty() || newFile.isEmpty()) {
-            logger.error("Один или оба файла пусты или null");
-            throw new ResponseStatusException(BAD_REQUEST, "Необходимо загрузить оба файла OLD и NEW");
-        }
-
-        logger.info("Читаю содержимое файлов...");
-        String oldContent = new String(oldFile.getBytes(), StandardCharsets.UTF_8);
-        String newContent = new String(newFile.getBytes(), StandardCharsets.UTF_8);
-        logger.info("OLD размер контента: {} символов", oldContent.length());
-        logger.info("NEW размер контента: {} символов", newContent.length());
-
-        logger.info("Парсинг OLD файла...");
-        DatParser.ParseResult oldResult = datParser.parse(oldContent);
-        logger.info("OLD формат: {}, записей: {}", oldResult.getFormat(), oldResult.getRecords().size());
-
-        logger.info("Парсинг NEW файла...");
-        DatParser.ParseResult newResult = datParser.parse(newContent);
-        logger.info("NEW формат: {}, записей: {}", newResult.getFormat(), newResult.getRecords().size());
-
-        if (oldResult.getFormat() != newResult.getFormat()) {
-            logger.error("Форматы не совпадают: OLD={}, NEW={}", oldResult.getFormat(), newResult.getFormat());
-            throw new ResponseStatusException(BAD_REQUEST, "Форматы файлов не совпадают");
-        }
+        ParsedUpload parsed = parseUpload(oldFile, newFile, format);
+        DatParser.ParseResult oldResult = parsed.oldResult();
+        DatParser.ParseResult newResult = parsed.newResult();
 
         logger.info("Построение diff...");
         List<DatRecord> diff = diffService.buildDiff(oldResult.getRecords(), newResult.getRecords());
         logger.info("Diff построен: {} записей", diff.size());
 
+        DiffSummary summary = diffService.summarize(diff);
+        // Полный diff остается на сервере: экспорт присылает только решения по слиянию
+        String diffId = diffSessionStore.put(newResult.getFormat(), diff);
+        if (paged) {
+            // Записи клиент запрашивает постранично через /diff/{diffId}/records
+            summary.setOmitted(summary.getTotal());
+            diff = List.of();
+            logger.info("Постраничный режим: записи не отправляются в ответе upload");
+        } else if (changesOnly) {
+            diff = diff.stream()
+                .filter(record -> !"same".equals(diffService.recordStatus(record)))
+                .toList();
+            summary.setOmitted(summary.getTotal() - diff.size());
+            logger.info("Режим только изменений: отправляю {} записей, пропущено {}", diff.size(), summary.getOmitted());
+        }
+
         UploadResponse response = new UploadResponse(newResult.getFormat().name().toLowerCase(), diff);
+        response.setDiffId(diffId);
+        response.setSummary(summary);
+        response.setFormatConfidence(parsed.formatConfidence());
         logger.info("Формирую ответ: format={}, records={}", response.getFormat(), response.getRecords().size());
         
         // Подсчет примерного размера ответа
@@ -91,20 +143,422 @@ public class DatController {
         return response;
     }
 
+    /**
+     * Потоковый вариант upload: ответ в формате NDJSON, записи отправляются частями по мере
+     * построения diff, и клиент может показывать первые записи до конца сравнения.
+     * Ошибки парсинга возвращаются обычным статусом; ошибка после начала ответа приходит
+     * последней строкой с типом {@code error}. Время ответа ограничено собственным
+     * {@code difftool.upload.stream-timeout-ms}, а не общим таймаутом асинхронных запросов:
+     * при превышении последней строкой тоже приходит {@code error}.
+     */
+    @PostMapping(value = "/upload/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+                 produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> uploadStream(@RequestParam("old") MultipartFile oldFile,
+                                                              @RequestParam("new") MultipartFile newFile,
+                                                              @RequestParam(value = "format", required = false) String format,
+                                                              @RequestParam(value = "changesOnly", defaultValue = "false") boolean changesOnly,
+                                                              HttpServletRequest request) throws IOException {
+        logger.info("=== Начало обработки потокового upload ===");
+        ParsedUpload parsed = parseUpload(oldFile, newFile, format);
+        DatParser.ParseResult oldResult = parsed.oldResult();
+        DatParser.ParseResult newResult = parsed.newResult();
+        disableAsyncTimeout(request);
+
+        StreamingResponseBody body = output -> {
+            long deadline = deadline(uploadStreamTimeoutMs);
+            UploadEvent start = new UploadEvent(UploadEvent.START);
+            start.setFormat(newResult.getFormat().name().toLowerCase());
+            start.setFormatConfidence(parsed.formatConfidence());
+            writeEvent(output, start);
+
+            List<DatRecord> diff = new ArrayList<>(newResult.getRecords().size());
+            try {
+                diffService.streamDiff(oldResult.getRecords(), newResult.getRecords(), part -> {
+                    if (expired(deadline)) {
+                        throw new DeadlineExceededException(uploadStreamTimeoutMs);
+                    }
+                    diff.addAll(part);
+                    List<DatRecord> sent = changesOnly
+                        ? part.stream().filter(record -> !"same".equals(diffService.recordStatus(record))).toList()
+                        : part;
+                    if (!sent.isEmpty()) {
+                        try {
+                            writeEvent(output, UploadEvent.records(sent));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                // Клиент закрыл соединение: задачи diff уже отменены
+                throw e.getCause();
+            } catch (DeadlineExceededException e) {
+                logger.warn("Потоковый upload прерван: {}", e.getMessage());
+                writeEvent(output, UploadEvent.error(e.getMessage()));
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Ошибка построения diff в потоковом upload", e);
+                writeEvent(output, UploadEvent.error("Ошибка построения diff: " + e.getMessage()));
+                return;
+            }
+
+            DiffSummary summary = diffService.summarize(diff);
+            String diffId = diffSessionStore.put(newResult.getFormat(), diff);
+            if (changesOnly) {
+                summary.setOmitted(summary.getUnchanged());
+            }
+            UploadEvent done = new UploadEvent(UploadEvent.DONE);
+            done.setDiffId(diffId);
+            done.setSummary(summary);
+            writeEvent(output, done);
+            logger.info("=== Конец потокового upload: записей={}, diffId={} ===", diff.size(), diffId);
+        };
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .body(body);
+    }
+
+    /**
+     * Итоговый файл пишется прямо в ответ. Время экспорта ограничено собственным
+     * {@code difftool.export.timeout-ms} (по умолчанию без ограничения), а не общим таймаутом
+     * асинхронных запросов. Если срок истек или запись не удалась после начала ответа,
+     * соединение обрывается без завершающего блока, и клиент получает ошибку, а не обрезанный файл.
+     */
     @PostMapping(value = "/export", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<byte[]> export(@RequestBody ExportRequest request) {
-        if (request.getRecords() == null || request.getRecords().isEmpty()) {
+    public ResponseEntity<StreamingResponseBody> export(@RequestBody ExportRequest request,
+                                                        HttpServletRequest servletRequest) {
+        List<DatRecord> records = request.getRecords();
+        DatFormat format;
+        if (StringUtils.hasText(request.getDiffId())) {
+            DiffSessionStore.DiffSession session = requireSession(request.getDiffId());
+            records = session.getRecords();
+            if (request.getRecords() != null && !request.getRecords().isEmpty()) {
+                records = mergeService.overlay(records, request.getRecords());
+            }
+            if (request.getDecisions() != null && !request.getDecisions().isEmpty()) {
+                records = mergeService.applyDecisions(records, request.getDecisions());
+            }
+            logger.info("Экспорт из сессии {}: записей={}, решений={}", request.getDiffId(), records.size(),
+                        request.getDecisions() != null ? request.getDecisions().size() : 0);
+            format = StringUtils.hasText(request.getFormat()) ? resolveFormat(request.getFormat()) : session.getFormat();
+        } else {
+            format = resolveFormat(request.getFormat());
+        }
+        if (records == null || records.isEmpty()) {
             throw new ResponseStatusException(BAD_REQUEST, "Нет данных для экспорта");
         }
-        DatFormat format = resolveFormat(request.getFormat());
-        byte[] payload = exportService.export(request.getRecords(), format);
+        // Файл пишется прямо в ответ, без промежуточной строки или byte[]
+        List<DatRecord> exported = records;
+        disableAsyncTimeout(servletRequest);
+        StreamingResponseBody body = output -> exportService.export(
+            exported, format, new DeadlineOutputStream(output, deadline(exportTimeoutMs), exportTimeoutMs));
 
         String fileName = format == DatFormat.BLOCK ? "merged_item_name.txt" : "merged.txt";
 
         return ResponseEntity.ok()
             .contentType(MediaType.TEXT_PLAIN)
             .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
-            .body(payload);
+            .body(body);
+    }
+
+    /**
+     * Применяет пакет операций слияния к сессии diff. Ответ - только подтверждение,
+     * итоговый файл собирается при экспорте по diffId.
+     */
+    @PostMapping(value = "/diff/{diffId}/operations", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public OperationsResponse applyOperations(@PathVariable("diffId") String diffId,
+                                              @RequestBody OperationsRequest request) {
+        DiffSessionStore.DiffSession session = requireSession(diffId);
+        List<MergeOperation> operations = request.getOperations() != null ? request.getOperations() : List.of();
+        try {
+            long version = mergeService.applyOperations(session, operations);
+            logger.debug("Сессия {}: применено операций {}, версия {}", diffId, operations.size(), version);
+            return new OperationsResponse(operations.size(), version);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /**
+     * Страница записей сессии diff для виртуального скролла, с фильтром по статусу и поиском.
+     */
+    @GetMapping("/diff/{diffId}/records")
+    public RecordPage records(@PathVariable("diffId") String diffId,
+                              @RequestParam(value = "offset", defaultValue = "0") int offset,
+                              @RequestParam(value = "limit", defaultValue = "100") int limit,
+                              @RequestParam(value = "status", required = false) String status,
+                              @RequestParam(value = "q", required = false) String query) {
+        DiffSessionStore.DiffSession session = requireSession(diffId);
+        try {
+            return diffQueryService.page(session, offset, limit, status, query);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /**
+     * Поиск по сессии diff с ранжированием. Термы через пробел, поддерживаются
+     * {@code поле:значение} и {@code id:префикс}.
+     */
+    @GetMapping("/diff/{diffId}/search")
+    public SearchResult search(@PathVariable("diffId") String diffId,
+                               @RequestParam("q") String query,
+                               @RequestParam(value = "limit", defaultValue = "50") int limit) {
+        return searchService.search(requireSession(diffId), query, limit);
+    }
+
+    /**
+     * Группы одинаковых изменений сессии diff (поле, OLD, NEW) по убыванию числа вхождений.
+     */
+    @GetMapping("/diff/{diffId}/groups")
+    public ChangeGroupList changeGroups(@PathVariable("diffId") String diffId,
+                                        @RequestParam(value = "minCount", defaultValue = "2") int minCount,
+                                        @RequestParam(value = "limit", defaultValue = "200") int limit,
+                                        @RequestParam(value = "key", required = false) String key) {
+        return changeGroupService.list(requireSession(diffId), minCount, limit, key);
+    }
+
+    /**
+     * Массовое слияние: операция применяется ко всем полям выбранных групп одним пакетом.
+     */
+    @PostMapping(value = "/diff/{diffId}/groups/apply", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public OperationsResponse applyChangeGroups(@PathVariable("diffId") String diffId,
+                                                @RequestBody MassMergeRequest request) {
+        DiffSessionStore.DiffSession session = requireSession(diffId);
+        try {
+            OperationsResponse response = changeGroupService.apply(session, request);
+            logger.debug("Сессия {}: массовое слияние {} полей, версия {}", diffId, response.getApplied(),
+                         response.getVersion());
+            return response;
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    private DiffSessionStore.DiffSession requireSession(String diffId) {
+        DiffSessionStore.DiffSession session = diffSessionStore.get(diffId);
+        if (session == null) {
+            throw new ResponseStatusException(GONE, "Сессия diff не найдена на сервере, загрузите файлы заново");
+        }
+        return session;
+    }
+
+    /**
+     * Проверяет файлы upload и параллельно парсит OLD и NEW. Форматы файлов должны совпадать.
+     */
+    private ParsedUpload parseUpload(MultipartFile oldFile, MultipartFile newFile, String format) throws IOException {
+        logger.info("OLD файл: name={}, size={}", oldFile != null ? oldFile.getOriginalFilename() : "null",
+                    oldFile != null ? oldFile.getSize() : 0);
+        logger.info("NEW файл: name={}, size={}", newFile != null ? newFile.getOriginalFilename() : "null",
+                    newFile != null ? newFile.getSize() : 0);
+
+        if (oldFile == null || newFile == null || oldFile.isEmpty() || newFile.isEmpty()) {
+            logger.error("Один или оба файла пусты или null");
+            throw new ResponseStatusException(BAD_REQUEST, "Необходимо загрузить оба файла OLD и NEW");
+        }
+
+        DatFormat formatOverride = resolveFormatOverride(format);
+        if (formatOverride != null) {
+            logger.info("Формат задан явно: {}", formatOverride);
+        }
+
+        logger.info("Параллельный парсинг OLD и NEW файлов...");
+        CompletableFuture<DatParser.ParseResult> oldTask = parseAsync(oldFile, formatOverride);
+        CompletableFuture<DatParser.ParseResult> newTask = parseAsync(newFile, formatOverride);
+        // Ошибка любого из файлов сразу отменяет парсинг другого
+        oldTask.exceptionally(e -> {
+            newTask.cancel(true);
+            return null;
+        });
+        newTask.exceptionally(e -> {
+            oldTask.cancel(true);
+            return null;
+        });
+        try {
+            await(CompletableFuture.allOf(oldTask, newTask), oldTask, newTask);
+        } finally {
+            oldTask.cancel(true);
+            newTask.cancel(true);
+        }
+        DatParser.ParseResult oldResult = oldTask.join();
+        DatParser.ParseResult newResult = newTask.join();
+        logger.info("OLD формат: {} (уверенность {}), записей: {}", oldResult.getFormat(),
+                    oldResult.getDetection().getConfidence(), oldResult.getRecords().size());
+        logger.info("NEW формат: {} (уверенность {}), записей: {}", newResult.getFormat(),
+                    newResult.getDetection().getConfidence(), newResult.getRecords().size());
+
+        if (oldResult.getFormat() != newResult.getFormat()) {
+            logger.error("Форматы не совпадают: OLD={}, NEW={}", oldResult.getFormat(), newResult.getFormat());
+            throw new ResponseStatusException(BAD_REQUEST, "Форматы файлов не совпадают");
+        }
+        return new ParsedUpload(oldResult, newResult);
+    }
+
+    /**
+     * Снимает для запроса общий {@code spring.mvc.async.request-timeout}. По нему контейнер
+     * завершил бы потоковый ответ на середине штатно, и обрезанный ответ выглядел бы полным.
+     * Вместо него эндпоинт проверяет собственный срок в потоке, который пишет ответ.
+     */
+    private static void disableAsyncTimeout(HttpServletRequest request) {
+        AsyncWebRequest asyncRequest = WebAsyncUtils.getAsyncManager(request).getAsyncWebRequest();
+        if (asyncRequest != null) {
+            asyncRequest.setTimeout(-1L);
+        }
+    }
+
+    /**
+     * @return срок в единицах {@link System#nanoTime()} или {@link Long#MAX_VALUE}, если таймаут не задан
+     */
+    private static long deadline(long timeoutMs) {
+        return timeoutMs > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs) : Long.MAX_VALUE;
+    }
+
+    private static boolean expired(long deadline) {
+        return deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0;
+    }
+
+    /**
+     * Поток ответа, который отказывает в записи после срока. Исключение после начала ответа
+     * обрывает соединение, поэтому файл не может прийти обрезанным, но внешне целым.
+     */
+    private static final class DeadlineOutputStream extends FilterOutputStream {
+        private final long deadline;
+        private final long timeoutMs;
+
+        DeadlineOutputStream(OutputStream output, long deadline, long timeoutMs) {
+            super(output);
+            this.deadline = deadline;
+            this.timeoutMs = timeoutMs;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkDeadline();
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            checkDeadline();
+            out.write(bytes, offset, length);
+        }
+
+        private void checkDeadline() throws IOException {
+            if (expired(deadline)) {
+                throw new IOException(timeoutMessage(timeoutMs));
+            }
+        }
+    }
+
+    /**
+     * Потоковый ответ не уложился в свой таймаут.
+     */
+    private static final class DeadlineExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        DeadlineExceededException(long timeoutMs) {
+            super(timeoutMessage(timeoutMs));
+        }
+    }
+
+    private static String timeoutMessage(long timeoutMs) {
+        return "Превышено время ответа: " + timeoutMs + " мс";
+    }
+
+    /**
+     * Одна строка NDJSON. Поток сбрасывается после каждой строки, чтобы клиент получал записи сразу.
+     */
+    private void writeEvent(OutputStream output, UploadEvent event) throws IOException {
+        output.write(objectMapper.writeValueAsBytes(event));
+        output.write('\n');
+        output.flush();
+    }
+
+    /**
+     * Парсит файл напрямую из multipart-потока, не копируя содержимое в byte[] и String.
+     */
+    private DatParser.ParseResult parseStream(MultipartFile file, DatFormat formatOverride) throws IOException {
+        try (InputStream input = file.getInputStream()) {
+            return datParser.parse(input, formatOverride);
+        }
+    }
+
+    /**
+     * Парсит файл в пуле upload. Отмена результата прерывает поток парсинга.
+     */
+    private CompletableFuture<DatParser.ParseResult> parseAsync(MultipartFile file, DatFormat formatOverride) {
+        CompletableFuture<DatParser.ParseResult> result = new CompletableFuture<>();
+        Future<?> task = uploadExecutor.submit(() -> {
+            try {
+                result.complete(parseStream(file, formatOverride));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((parsed, error) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Ожидает оба парсинга и пробрасывает исходное исключение упавшей задачи (а не отмену второй).
+     * Error пробрасывается без обертки.
+     */
+    private void await(CompletableFuture<Void> both, CompletableFuture<?>... tasks) throws IOException {
+        try {
+            both.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(INTERNAL_SERVER_ERROR, "Парсинг прерван", e);
+        } catch (ExecutionException | CancellationException e) {
+            Throwable cause = null;
+            for (CompletableFuture<?> task : tasks) {
+                cause = cause != null ? cause : failure(task);
+            }
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Ошибка парсинга файла", cause != null ? cause : e);
+        }
+    }
+
+    /**
+     * @return исключение задачи, завершившейся с ошибкой, или null (успех, отмена, еще выполняется)
+     */
+    private static Throwable failure(CompletableFuture<?> task) {
+        if (!task.isCompletedExceptionally() || task.isCancelled()) {
+            return null;
+        }
+        try {
+            task.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause();
+        }
+    }
+
+    /**
+     * Явный формат из запроса upload. Пустое значение или "auto" - автоопределение.
+     */
+    private DatFormat resolveFormatOverride(String format) {
+        if (!StringUtils.hasText(format) || "auto".equalsIgnoreCase(format)) {
+            return null;
+        }
+        return switch (format.toLowerCase()) {
+            case "block" -> DatFormat.BLOCK;
+            case "config" -> DatFormat.CONFIG;
+            case "line" -> DatFormat.LINE;
+            default -> throw new ResponseStatusException(BAD_REQUEST, "Неизвестный формат: " + format);
+        };
     }
 
     private DatFormat resolveFormat(String format) {
@@ -117,5 +571,11 @@ public class DatController {
             default -> DatFormat.LINE;
         };
     }
-}
 
+    private record ParsedUpload(DatParser.ParseResult oldResult, DatParser.ParseResult newResult) {
+
+        double formatConfidence() {
+            return Math.min(oldResult.getDetection().getConfidence(), newResult.getDetection().getConfidence());
+        }
+    }
+}
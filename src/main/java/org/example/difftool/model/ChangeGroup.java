@@ -0,0 +1,64 @@
+package org.example.difftool.model;
+
+/**
+ * Группа одинаковых изменений: поле {@code key} изменено с {@code oldValue} на {@code newValue}
+ * в {@code count} записях. {@code id} - номер группы в сессии diff для массового слияния.
+ */
+public class ChangeGroup {
+    private int id;
+    private String key;
+    private String oldValue;
+    private String newValue;
+    private int count;
+
+    public ChangeGroup() {
+    }
+
+    public ChangeGroup(int id, String key, String oldValue, String newValue, int count) {
+        this.id = id;
+        this.key = key;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+        this.count = count;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public String getOldValue() {
+        return oldValue;
+    }
+
+    public void setOldValue(String oldValue) {
+        this.oldValue = oldValue;
+    }
+
+    public String getNewValue() {
+        return newValue;
+    }
+
+    public void setNewValue(String newValue) {
+        this.newValue = newValue;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+}
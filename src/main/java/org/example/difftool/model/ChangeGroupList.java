@@ -0,0 +1,36 @@
+package org.example.difftool.model;
+
+import java.util.List;
+
+/**
+ * Группы одинаковых изменений по убыванию размера. {@code total} - сколько групп подошло
+ * под фильтр, {@code groups} - первые из них в пределах лимита.
+ */
+public class ChangeGroupList {
+    private int total;
+    private List<ChangeGroup> groups;
+
+    public ChangeGroupList() {
+    }
+
+    public ChangeGroupList(int total, List<ChangeGroup> groups) {
+        this.total = total;
+        this.groups = groups;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public List<ChangeGroup> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(List<ChangeGroup> groups) {
+        this.groups = groups;
+    }
+}
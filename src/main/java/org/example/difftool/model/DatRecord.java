@@ -1,5 +1,7 @@
 package org.example.difftool.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -8,6 +10,16 @@ public class DatRecord {
     private List<DatField> fields = new ArrayList<>();
     private boolean deleted;
 
+    /**
+     * Компактная запись без изменений: вместо {@link #fields} передаются только пары
+     * ключ-значение в {@link #values} (ключ, значение, ключ, значение, ...).
+     * Поля разворачиваются по требованию, см. {@code MergeService.expandRecord}.
+     */
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private boolean same;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<String> values;
+
     public DatRecord() {
     }
 
@@ -43,5 +55,20 @@ public class DatRecord {
     public void setDeleted(boolean deleted) {
         this.deleted = deleted;
     }
-}
 
+    public boolean isSame() {
+        return same;
+    }
+
+    public void setSame(boolean same) {
+        this.same = same;
+    }
+
+    public List<String> getValues() {
+        return values;
+    }
+
+    public void setValues(List<String> values) {
+        this.values = values;
+    }
+}
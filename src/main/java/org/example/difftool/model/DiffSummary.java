@@ -0,0 +1,64 @@
+package org.example.difftool.model;
+
+/**
+ * Сводка по записям diff: сколько записей каждого вида и сколько не попало в ответ.
+ */
+public class DiffSummary {
+    private int total;
+    private int added;
+    private int removed;
+    private int changed;
+    private int unchanged;
+    private int omitted;
+
+    public DiffSummary() {
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public int getAdded() {
+        return added;
+    }
+
+    public void setAdded(int added) {
+        this.added = added;
+    }
+
+    public int getRemoved() {
+        return removed;
+    }
+
+    public void setRemoved(int removed) {
+        this.removed = removed;
+    }
+
+    public int getChanged() {
+        return changed;
+    }
+
+    public void setChanged(int changed) {
+        this.changed = changed;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    public void setUnchanged(int unchanged) {
+        this.unchanged = unchanged;
+    }
+
+    public int getOmitted() {
+        return omitted;
+    }
+
+    public void setOmitted(int omitted) {
+        this.omitted = omitted;
+    }
+}
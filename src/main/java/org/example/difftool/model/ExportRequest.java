@@ -5,6 +5,8 @@ import java.util.List;
 public class ExportRequest {
     private String format;
     private List<DatRecord> records;
+    private String diffId;
+    private List<RecordDecision> decisions;
 
     public ExportRequest() {
     }
@@ -24,5 +26,27 @@ public class ExportRequest {
     public void setRecords(List<DatRecord> records) {
         this.records = records;
     }
+
+    /**
+     * Id сохраненного diff: записи из {@link #records} накладываются на полный diff по id.
+     */
+    public String getDiffId() {
+        return diffId;
+    }
+
+    public void setDiffId(String diffId) {
+        this.diffId = diffId;
+    }
+
+    /**
+     * Решения по слиянию, применяемые к записям сессии {@link #diffId}.
+     */
+    public List<RecordDecision> getDecisions() {
+        return decisions;
+    }
+
+    public void setDecisions(List<RecordDecision> decisions) {
+        this.decisions = decisions;
+    }
 }
 
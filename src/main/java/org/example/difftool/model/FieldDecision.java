@@ -0,0 +1,43 @@
+package org.example.difftool.model;
+
+/**
+ * Правка поля: новое итоговое значение и/или удаление. {@code null} - оставить как есть.
+ */
+public class FieldDecision {
+    private String key;
+    private String mergedValue;
+    private Boolean deleted;
+
+    public FieldDecision() {
+    }
+
+    public FieldDecision(String key, String mergedValue, Boolean deleted) {
+        this.key = key;
+        this.mergedValue = mergedValue;
+        this.deleted = deleted;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public String getMergedValue() {
+        return mergedValue;
+    }
+
+    public void setMergedValue(String mergedValue) {
+        this.mergedValue = mergedValue;
+    }
+
+    public Boolean getDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(Boolean deleted) {
+        this.deleted = deleted;
+    }
+}
@@ -0,0 +1,51 @@
+package org.example.difftool.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Массовое слияние по группам одинаковых изменений. Группы задаются номерами {@code groups}
+ * или правилом: все группы поля {@code key} с не менее чем {@code minCount} вхождениями.
+ * Операция {@code op} (copyOld, copyNew или reset) применяется ко всем полям выбранных групп.
+ */
+public class MassMergeRequest {
+    private String op;
+    private List<Integer> groups = new ArrayList<>();
+    private String key;
+    private int minCount = 2;
+
+    public MassMergeRequest() {
+    }
+
+    public String getOp() {
+        return op;
+    }
+
+    public void setOp(String op) {
+        this.op = op;
+    }
+
+    public List<Integer> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(List<Integer> groups) {
+        this.groups = groups;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public int getMinCount() {
+        return minCount;
+    }
+
+    public void setMinCount(int minCount) {
+        this.minCount = minCount;
+    }
+}
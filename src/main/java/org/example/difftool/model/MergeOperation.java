@@ -0,0 +1,60 @@
+package org.example.difftool.model;
+
+/**
+ * Одна операция слияния над записью сессии diff.
+ * <p>
+ * Запись задается индексом {@code record} в diff или ее {@code id} (если заданы оба, они должны совпадать).
+ * Поле задается индексом {@code field}; без него операции copyOld/copyNew/reset применяются ко всей записи.
+ * Операции: copyOld, copyNew, reset, setMerged (с {@code value}), deleteField, restoreField,
+ * deleteRecord, restoreRecord.
+ */
+public class MergeOperation {
+    private String op;
+    private Integer record;
+    private String id;
+    private Integer field;
+    private String value;
+
+    public MergeOperation() {
+    }
+
+    public String getOp() {
+        return op;
+    }
+
+    public void setOp(String op) {
+        this.op = op;
+    }
+
+    public Integer getRecord() {
+        return record;
+    }
+
+    public void setRecord(Integer record) {
+        this.record = record;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Integer getField() {
+        return field;
+    }
+
+    public void setField(Integer field) {
+        this.field = field;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+}
@@ -0,0 +1,19 @@
+package org.example.difftool.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class OperationsRequest {
+    private List<MergeOperation> operations = new ArrayList<>();
+
+    public OperationsRequest() {
+    }
+
+    public List<MergeOperation> getOperations() {
+        return operations;
+    }
+
+    public void setOperations(List<MergeOperation> operations) {
+        this.operations = operations;
+    }
+}
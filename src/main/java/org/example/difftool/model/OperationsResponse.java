@@ -0,0 +1,33 @@
+package org.example.difftool.model;
+
+/**
+ * Подтверждение пакета операций: сколько применено и версия сессии после применения.
+ */
+public class OperationsResponse {
+    private int applied;
+    private long version;
+
+    public OperationsResponse() {
+    }
+
+    public OperationsResponse(int applied, long version) {
+        this.applied = applied;
+        this.version = version;
+    }
+
+    public int getApplied() {
+        return applied;
+    }
+
+    public void setApplied(int applied) {
+        this.applied = applied;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+}
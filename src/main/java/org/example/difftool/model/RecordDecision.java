@@ -0,0 +1,41 @@
+package org.example.difftool.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Решение пользователя по записи при экспорте из сессии diff: удаление записи
+ * и/или правки отдельных полей. Записи без решения экспортируются как есть.
+ */
+public class RecordDecision {
+    private String id;
+    private Boolean deleted;
+    private List<FieldDecision> fields = new ArrayList<>();
+
+    public RecordDecision() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Boolean getDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(Boolean deleted) {
+        this.deleted = deleted;
+    }
+
+    public List<FieldDecision> getFields() {
+        return fields;
+    }
+
+    public void setFields(List<FieldDecision> fields) {
+        this.fields = fields;
+    }
+}
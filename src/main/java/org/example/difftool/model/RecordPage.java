@@ -0,0 +1,56 @@
+package org.example.difftool.model;
+
+import java.util.List;
+
+/**
+ * Страница записей сессии diff: {@code total} - число записей, подходящих под фильтр,
+ * {@code records} - записи с позиции {@code offset} в отфильтрованном списке.
+ */
+public class RecordPage {
+    private int offset;
+    private int limit;
+    private int total;
+    private List<DatRecord> records;
+
+    public RecordPage() {
+    }
+
+    public RecordPage(int offset, int limit, int total, List<DatRecord> records) {
+        this.offset = offset;
+        this.limit = limit;
+        this.total = total;
+        this.records = records;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public List<DatRecord> getRecords() {
+        return records;
+    }
+
+    public void setRecords(List<DatRecord> records) {
+        this.records = records;
+    }
+}
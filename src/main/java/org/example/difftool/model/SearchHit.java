@@ -0,0 +1,43 @@
+package org.example.difftool.model;
+
+/**
+ * Найденная запись: индекс в diff, id и релевантность (больше - выше в выдаче).
+ */
+public class SearchHit {
+    private int index;
+    private String id;
+    private int score;
+
+    public SearchHit() {
+    }
+
+    public SearchHit(int index, String id, int score) {
+        this.index = index;
+        this.id = id;
+        this.score = score;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public void setScore(int score) {
+        this.score = score;
+    }
+}
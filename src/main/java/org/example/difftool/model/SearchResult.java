@@ -0,0 +1,52 @@
+package org.example.difftool.model;
+
+import java.util.List;
+
+public class SearchResult {
+    private String query;
+    private int total;
+    private long tookMs;
+    private List<SearchHit> hits;
+
+    public SearchResult() {
+    }
+
+    public SearchResult(String query, int total, long tookMs, List<SearchHit> hits) {
+        this.query = query;
+        this.total = total;
+        this.tookMs = tookMs;
+        this.hits = hits;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public long getTookMs() {
+        return tookMs;
+    }
+
+    public void setTookMs(long tookMs) {
+        this.tookMs = tookMs;
+    }
+
+    public List<SearchHit> getHits() {
+        return hits;
+    }
+
+    public void setHits(List<SearchHit> hits) {
+        this.hits = hits;
+    }
+}
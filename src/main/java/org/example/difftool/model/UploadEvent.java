@@ -0,0 +1,98 @@
+package org.example.difftool.model;
+
+import java.util.List;
+
+/**
+ * Одна строка потокового ответа upload (application/x-ndjson). Порядок событий:
+ * {@code start} (формат), затем {@code records} по мере построения diff, затем {@code done}
+ * (diffId и сводка). При ошибке после начала ответа последним приходит {@code error}.
+ */
+public class UploadEvent {
+    public static final String START = "start";
+    public static final String RECORDS = "records";
+    public static final String DONE = "done";
+    public static final String ERROR = "error";
+
+    private String type;
+    private String format;
+    private Double formatConfidence;
+    private List<DatRecord> records;
+    private String diffId;
+    private DiffSummary summary;
+    private String message;
+
+    public UploadEvent() {
+    }
+
+    public UploadEvent(String type) {
+        this.type = type;
+    }
+
+    public static UploadEvent records(List<DatRecord> records) {
+        UploadEvent event = new UploadEvent(RECORDS);
+        event.setRecords(records);
+        return event;
+    }
+
+    public static UploadEvent error(String message) {
+        UploadEvent event = new UploadEvent(ERROR);
+        event.setMessage(message);
+        return event;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    public Double getFormatConfidence() {
+        return formatConfidence;
+    }
+
+    public void setFormatConfidence(Double formatConfidence) {
+        this.formatConfidence = formatConfidence;
+    }
+
+    public List<DatRecord> getRecords() {
+        return records;
+    }
+
+    public void setRecords(List<DatRecord> records) {
+        this.records = records;
+    }
+
+    public String getDiffId() {
+        return diffId;
+    }
+
+    public void setDiffId(String diffId) {
+        this.diffId = diffId;
+    }
+
+    public DiffSummary getSummary() {
+        return summary;
+    }
+
+    public void setSummary(DiffSummary summary) {
+        this.summary = summary;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
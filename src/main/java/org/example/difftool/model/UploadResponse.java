@@ -5,6 +5,9 @@ import java.util.List;
 public class UploadResponse {
     private String format;
     private List<DatRecord> records;
+    private Double formatConfidence;
+    private String diffId;
+    private DiffSummary summary;
 
     public UploadResponse() {
     }
@@ -29,5 +32,28 @@ public class UploadResponse {
     public void setRecords(List<DatRecord> records) {
         this.records = records;
     }
-}
 
+    public Double getFormatConfidence() {
+        return formatConfidence;
+    }
+
+    public void setFormatConfidence(Double formatConfidence) {
+        this.formatConfidence = formatConfidence;
+    }
+
+    public String getDiffId() {
+        return diffId;
+    }
+
+    public void setDiffId(String diffId) {
+        this.diffId = diffId;
+    }
+
+    public DiffSummary getSummary() {
+        return summary;
+    }
+
+    public void setSummary(DiffSummary summary) {
+        this.summary = summary;
+    }
+}
@@ -0,0 +1,87 @@
+package org.example.difftool.service;
+
+import org.example.difftool.model.ChangeGroup;
+import org.example.difftool.model.ChangeGroupList;
+import org.example.difftool.model.MassMergeRequest;
+import org.example.difftool.model.OperationsResponse;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Группировка одинаковых изменений сессии diff и массовое слияние целыми группами.
+ */
+@Service
+public class ChangeGroupService {
+
+    private static final int DEFAULT_LIMIT = 200;
+    private static final int MAX_LIMIT = 10_000;
+
+    private final MergeService mergeService;
+
+    public ChangeGroupService(MergeService mergeService) {
+        this.mergeService = mergeService;
+    }
+
+    /**
+     * Группы не меньше {@code minCount} полей по убыванию размера, при {@code key} - только этого поля.
+     */
+    public ChangeGroupList list(DiffSessionStore.DiffSession session, int minCount, int limit, String key) {
+        ChangeGroups groups = session.changeGroups();
+        int safeLimit = limit <= 0 ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+        List<ChangeGroup> result = new ArrayList<>();
+        int total = 0;
+        for (int rank = 0; rank < groups.groupCount(); rank++) {
+            int group = groups.bySize(rank);
+            if (groups.size(group) < minCount) {
+                break;
+            }
+            if (key != null && !key.equals(groups.key(group))) {
+                continue;
+            }
+            total++;
+            if (result.size() < safeLimit) {
+                result.add(new ChangeGroup(group, groups.key(group), groups.oldValue(group),
+                                           groups.newValue(group), groups.size(group)));
+            }
+        }
+        return new ChangeGroupList(total, result);
+    }
+
+    /**
+     * Применяет операцию ко всем полям выбранных групп одним пакетом.
+     *
+     * @throws IllegalArgumentException при неизвестной группе или операции, или если группы не выбраны
+     */
+    public OperationsResponse apply(DiffSessionStore.DiffSession session, MassMergeRequest request) {
+        ChangeGroups groups = session.changeGroups();
+        int[] selected = select(groups, request);
+        long[] fields = groups.members(selected);
+        long version = mergeService.applyToFields(session, fields, request.getOp());
+        return new OperationsResponse(fields.length, version);
+    }
+
+    private static int[] select(ChangeGroups groups, MassMergeRequest request) {
+        if (request.getGroups() != null && !request.getGroups().isEmpty()) {
+            return request.getGroups().stream().distinct().mapToInt(Integer::intValue).toArray();
+        }
+        if (request.getKey() == null) {
+            throw new IllegalArgumentException("Не заданы группы или поле для массового слияния");
+        }
+        int minCount = Math.max(1, request.getMinCount());
+        int[] selected = new int[groups.groupCount()];
+        int count = 0;
+        for (int rank = 0; rank < groups.groupCount(); rank++) {
+            int group = groups.bySize(rank);
+            if (groups.size(group) < minCount) {
+                break;
+            }
+            if (request.getKey().equals(groups.key(group))) {
+                selected[count++] = group;
+            }
+        }
+        return Arrays.copyOf(selected, count);
+    }
+}
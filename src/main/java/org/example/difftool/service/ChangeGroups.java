@@ -0,0 +1,258 @@
+package org.example.difftool.service;
+
+import org.example.difftool.model.DatField;
+import org.example.difftool.model.DatRecord;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Группы одинаковых изменений diff: поля со статусом {@code changed} с одинаковыми
+ * (ключ, OLD, NEW), например одна и та же правка формата подсказки в тысячах записей.
+ * <p>
+ * Кортеж хешируется в 64 бита, группа ищется в таблице с открытой адресацией по этому хешу;
+ * совпадение хеша подтверждается сравнением строк с первым полем группы. Поля группы хранятся
+ * упакованными ({@code запись << 32 | поле}) в одном массиве, группы лежат в нем подряд.
+ * Операции слияния не меняют ключи, OLD/NEW и порядок полей, поэтому группы строятся
+ * один раз на сессию и после построения не изменяются.
+ */
+public final class ChangeGroups {
+
+    private static final long[] EMPTY = new long[0];
+
+    private final String[] keys;
+    private final String[] oldValues;
+    private final String[] newValues;
+    /** Поля группы g - members[memberStart[g]..memberStart[g + 1]) по возрастанию записи. */
+    private final int[] memberStart;
+    private final long[] members;
+    /** Номера групп по убыванию числа полей, при равенстве - по первому вхождению. */
+    private final int[] bySize;
+    private final long estimatedBytes;
+
+    private ChangeGroups(String[] keys, String[] oldValues, String[] newValues,
+                         int[] memberStart, long[] members) {
+        this.keys = keys;
+        this.oldValues = oldValues;
+        this.newValues = newValues;
+        this.memberStart = memberStart;
+        this.members = members;
+        long[] order = new long[keys.length];
+        for (int group = 0; group < keys.length; group++) {
+            order[group] = (long) (Integer.MAX_VALUE - size(group)) << 32 | group;
+        }
+        Arrays.sort(order);
+        this.bySize = new int[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            bySize[i] = (int) order[i];
+        }
+        // Строки общие с записями diff, считаются только массивы
+        this.estimatedBytes = 96L + keys.length * 24L + members.length * 8L;
+    }
+
+    public static ChangeGroups build(List<DatRecord> records) {
+        Builder builder = new Builder();
+        for (int recordIndex = 0; recordIndex < records.size(); recordIndex++) {
+            DatRecord record = records.get(recordIndex);
+            if (record.getValues() != null || record.getFields() == null) {
+                continue; // компактная запись без изменений
+            }
+            List<DatField> fields = record.getFields();
+            for (int fieldIndex = 0; fieldIndex < fields.size(); fieldIndex++) {
+                DatField field = fields.get(fieldIndex);
+                if (groupable(field)) {
+                    builder.add(field, pack(recordIndex, fieldIndex));
+                }
+            }
+        }
+        return builder.finish();
+    }
+
+    /**
+     * В группы попадают только замены непустого значения непустым, как в прежней группировке на клиенте.
+     */
+    static boolean groupable(DatField field) {
+        return "changed".equals(field.getStatus())
+            && field.getOldValue() != null && !field.getOldValue().isEmpty()
+            && field.getNewValue() != null && !field.getNewValue().isEmpty();
+    }
+
+    /**
+     * Грубая оценка памяти групп без строк ключей и значений, которые принадлежат записям diff.
+     */
+    public long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public int groupCount() {
+        return keys.length;
+    }
+
+    public String key(int group) {
+        return keys[group];
+    }
+
+    public String oldValue(int group) {
+        return oldValues[group];
+    }
+
+    public String newValue(int group) {
+        return newValues[group];
+    }
+
+    public int size(int group) {
+        return memberStart[group + 1] - memberStart[group];
+    }
+
+    /**
+     * @return номер группы на позиции {@code rank} в порядке убывания размера
+     */
+    public int bySize(int rank) {
+        return bySize[rank];
+    }
+
+    /**
+     * Поля групп одним массивом упакованных индексов, см. {@link #recordOf} и {@link #fieldOf}.
+     *
+     * @throws IllegalArgumentException при неизвестном номере группы
+     */
+    public long[] members(int[] groups) {
+        int total = 0;
+        for (int group : groups) {
+            if (group < 0 || group >= keys.length) {
+                throw new IllegalArgumentException("Неизвестная группа изменений: " + group);
+            }
+            total += size(group);
+        }
+        if (total == 0) {
+            return EMPTY;
+        }
+        long[] result = new long[total];
+        int position = 0;
+        for (int group : groups) {
+            int size = size(group);
+            System.arraycopy(members, memberStart[group], result, position, size);
+            position += size;
+        }
+        return result;
+    }
+
+    public static int recordOf(long member) {
+        return (int) (member >>> 32);
+    }
+
+    public static int fieldOf(long member) {
+        return (int) member;
+    }
+
+    static long pack(int record, int field) {
+        return (long) record << 32 | (field & 0xFFFFFFFFL);
+    }
+
+    private static long tupleHash(String key, String oldValue, String newValue) {
+        long hash = ((long) key.hashCode() << 32) ^ (oldValue.hashCode() & 0xFFFFFFFFL);
+        hash ^= ((long) newValue.hashCode() << 16) * 0x9E3779B97F4A7C15L;
+        hash ^= ((long) oldValue.length() << 32 | newValue.length()) * 0xC2B2AE3D27D4EB4FL;
+        // Финализатор SplitMix64
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+
+    /**
+     * Накопитель групп. Для каждого поля запоминаются его группа и упакованный индекс,
+     * в конце поля раскладываются по группам подсчетом.
+     */
+    private static final class Builder {
+        private long[] slotHashes = new long[1024];
+        private int[] slotGroups = filled(1024);
+        private String[] keys = new String[256];
+        private String[] oldValues = new String[256];
+        private String[] newValues = new String[256];
+        private int[] sizes = new int[256];
+        private int groupCount;
+        private long[] entries = new long[1024];
+        private int[] entryGroups = new int[1024];
+        private int entryCount;
+
+        void add(DatField field, long member) {
+            int group = groupFor(field.getKey(), field.getOldValue(), field.getNewValue());
+            sizes[group]++;
+            if (entryCount == entries.length) {
+                entries = Arrays.copyOf(entries, entryCount * 2);
+                entryGroups = Arrays.copyOf(entryGroups, entryCount * 2);
+            }
+            entries[entryCount] = member;
+            entryGroups[entryCount++] = group;
+        }
+
+        private int groupFor(String key, String oldValue, String newValue) {
+            long hash = tupleHash(key, oldValue, newValue);
+            int mask = slotGroups.length - 1;
+            int slot = (int) hash & mask;
+            while (slotGroups[slot] >= 0) {
+                int group = slotGroups[slot];
+                if (slotHashes[slot] == hash && keys[group].equals(key)
+                    && oldValues[group].equals(oldValue) && newValues[group].equals(newValue)) {
+                    return group;
+                }
+                slot = (slot + 1) & mask;
+            }
+            int group = groupCount++;
+            if (group == keys.length) {
+                keys = Arrays.copyOf(keys, group * 2);
+                oldValues = Arrays.copyOf(oldValues, group * 2);
+                newValues = Arrays.copyOf(newValues, group * 2);
+                sizes = Arrays.copyOf(sizes, group * 2);
+            }
+            keys[group] = key;
+            oldValues[group] = oldValue;
+            newValues[group] = newValue;
+            slotHashes[slot] = hash;
+            slotGroups[slot] = group;
+            if (groupCount * 2 > slotGroups.length) {
+                rehash();
+            }
+            return group;
+        }
+
+        private void rehash() {
+            long[] oldHashes = slotHashes;
+            int[] oldGroups = slotGroups;
+            slotHashes = new long[oldHashes.length * 2];
+            slotGroups = filled(oldGroups.length * 2);
+            int mask = slotGroups.length - 1;
+            for (int i = 0; i < oldGroups.length; i++) {
+                if (oldGroups[i] < 0) {
+                    continue;
+                }
+                int slot = (int) oldHashes[i] & mask;
+                while (slotGroups[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slotHashes[slot] = oldHashes[i];
+                slotGroups[slot] = oldGroups[i];
+            }
+        }
+
+        ChangeGroups finish() {
+            int[] memberStart = new int[groupCount + 1];
+            for (int group = 0; group < groupCount; group++) {
+                memberStart[group + 1] = memberStart[group] + sizes[group];
+            }
+            int[] next = Arrays.copyOf(memberStart, groupCount);
+            long[] members = new long[entryCount];
+            for (int i = 0; i < entryCount; i++) {
+                members[next[entryGroups[i]]++] = entries[i];
+            }
+            return new ChangeGroups(Arrays.copyOf(keys, groupCount), Arrays.copyOf(oldValues, groupCount),
+                                    Arrays.copyOf(newValues, groupCount), memberStart, members);
+        }
+
+        private static int[] filled(int length) {
+            int[] slots = new int[length];
+            Arrays.fill(slots, -1);
+            return slots;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package org.example.difftool.service;
+
+import org.example.difftool.model.DatField;
+import org.example.difftool.model.DatRecord;
+import org.example.difftool.model.DiffSummary;
+import org.example.difftool.model.RecordPage;
+import org.example.difftool.model.UploadResponse;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Компактное двоичное представление ответов с записями diff ({@value #MEDIA_TYPE}).
+ * <p>
+ * Формат: магия {@code DCD}, версия, вид ответа, заголовок ответа, словарь имен полей,
+ * затем записи. Целые - varint, строки - varint (длина UTF-8 + 1) и байты, 0 означает null;
+ * у значений полей наличие задано флагами, поэтому длина пишется без +1.
+ * Имя поля передается номером в словаре ответа, статус - одним байтом. mergedValue
+ * передается, только если отличается от значения по умолчанию (newValue, иначе oldValue).
+ */
+@Service
+public class CompactDiffWriter {
+
+    public static final String MEDIA_TYPE = "application/vnd.difftool.diff";
+
+    static final byte[] MAGIC = {'D', 'C', 'D'};
+    static final int VERSION = 1;
+
+    static final int KIND_UPLOAD = 1;
+    static final int KIND_PAGE = 2;
+
+    static final int RECORD_DELETED = 1;
+    static final int RECORD_SAME = 2;
+
+    static final int FIELD_OLD = 1;
+    static final int FIELD_NEW = 2;
+    static final int FIELD_MERGED = 4;
+    static final int FIELD_MERGED_NULL = 8;
+    static final int FIELD_DELETED = 16;
+
+    private static final List<String> STATUSES = List.of("same", "changed", "added", "removed");
+
+    public boolean supports(Class<?> type) {
+        return UploadResponse.class.isAssignableFrom(type) || RecordPage.class.isAssignableFrom(type);
+    }
+
+    public void write(Object payload, OutputStream output) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output, 64 * 1024));
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        List<DatRecord> records;
+        if (payload instanceof UploadResponse response) {
+            out.writeByte(KIND_UPLOAD);
+            writeString(out, response.getFormat());
+            out.writeBoolean(response.getFormatConfidence() != null);
+            if (response.getFormatConfidence() != null) {
+                out.writeDouble(response.getFormatConfidence());
+            }
+            writeString(out, response.getDiffId());
+            writeSummary(out, response.getSummary());
+            records = response.getRecords();
+        } else if (payload instanceof RecordPage page) {
+            out.writeByte(KIND_PAGE);
+            writeVarint(out, page.getOffset());
+            writeVarint(out, page.getLimit());
+            writeVarint(out, page.getTotal());
+            records = page.getRecords();
+        } else {
+            throw new IllegalArgumentException("Неподдерживаемый тип ответа: " + payload.getClass().getName());
+        }
+        writeRecords(out, records != null ? records : List.of());
+        out.flush();
+    }
+
+    private void writeSummary(DataOutputStream out, DiffSummary summary) throws IOException {
+        out.writeBoolean(summary != null);
+        if (summary == null) {
+            return;
+        }
+        writeVarint(out, summary.getTotal());
+        writeVarint(out, summary.getAdded());
+        writeVarint(out, summary.getRemoved());
+        writeVarint(out, summary.getChanged());
+        writeVarint(out, summary.getUnchanged());
+        writeVarint(out, summary.getOmitted());
+    }
+
+    private void writeRecords(DataOutputStream out, List<DatRecord> records) throws IOException {
+        Map<String, Integer> keyIndex = new HashMap<>();
+        List<String> keys = new ArrayList<>();
+        for (DatRecord record : records) {
+            if (record.isSame() && record.getValues() != null) {
+                for (int i = 0; i < record.getValues().size(); i += 2) {
+                    collectKey(record.getValues().get(i), keyIndex, keys);
+                }
+            } else if (record.getFields() != null) {
+                for (DatField field : record.getFields()) {
+                    collectKey(field.getKey(), keyIndex, keys);
+                }
+            }
+        }
+        writeVarint(out, keys.size());
+        for (String key : keys) {
+            writeString(out, key);
+        }
+
+        writeVarint(out, records.size());
+        for (DatRecord record : records) {
+            writeString(out, record.getId());
+            boolean same = record.isSame() && record.getValues() != null;
+            out.writeByte((record.isDeleted() ? RECORD_DELETED : 0) | (same ? RECORD_SAME : 0));
+            if (same) {
+                List<String> values = record.getValues();
+                writeVarint(out, values.size() / 2);
+                for (int i = 0; i + 1 < values.size(); i += 2) {
+                    writeVarint(out, keyIndex.get(values.get(i)));
+                    writeString(out, values.get(i + 1));
+                }
+                continue;
+            }
+            List<DatField> fields = record.getFields() != null ? record.getFields() : List.of();
+            writeVarint(out, fields.size());
+            for (DatField field : fields) {
+                writeField(out, field, keyIndex);
+            }
+        }
+    }
+
+    private void writeField(DataOutputStream out, DatField field, Map<String, Integer> keyIndex) throws IOException {
+        String oldValue = field.getOldValue();
+        String newValue = field.getNewValue();
+        String defaultMerged = newValue != null ? newValue : oldValue;
+        boolean explicitMerged = !Objects.equals(field.getMergedValue(), defaultMerged);
+        int flags = (oldValue != null ? FIELD_OLD : 0)
+            | (newValue != null ? FIELD_NEW : 0)
+            | (explicitMerged ? (field.getMergedValue() != null ? FIELD_MERGED : FIELD_MERGED_NULL) : 0)
+            | (field.isDeleted() ? FIELD_DELETED : 0);
+
+        writeVarint(out, keyIndex.get(field.getKey()));
+        out.writeByte(statusCode(field.getStatus()));
+        out.writeByte(flags);
+        if (oldValue != null) {
+            writeUtf8(out, oldValue);
+        }
+        if (newValue != null) {
+            writeUtf8(out, newValue);
+        }
+        if ((flags & FIELD_MERGED) != 0) {
+            writeUtf8(out, field.getMergedValue());
+        }
+    }
+
+    private static void collectKey(String key, Map<String, Integer> keyIndex, List<String> keys) {
+        if (keyIndex.putIfAbsent(key, keys.size()) == null) {
+            keys.add(key);
+        }
+    }
+
+    /**
+     * 0 - same (и отсутствующий статус), 1 - changed, 2 - added, 3 - removed.
+     */
+    private static int statusCode(String status) {
+        int code = status != null ? STATUSES.indexOf(status) : 0;
+        if (code < 0) {
+            throw new IllegalArgumentException("Неизвестный статус поля: " + status);
+        }
+        return code;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    /**
+     * Строка, про которую по флагам уже известно, что она не null: только длина и байты.
+     */
+    private static void writeUtf8(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+}
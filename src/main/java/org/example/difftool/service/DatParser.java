@@ -1,12 +1,29 @@
 package org.example.difftool.service;
 
+import org.example.difftool.config.ExecutorConfig;
 import org.example.difftool.model.DatFormat;
+import org.example.util.FieldTokenizer;
+import org.example.util.SymbolTable;
+import org.example.util.ValueCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 @Service
 public class DatParser {
@@ -17,192 +34,424 @@ public class DatParser {
     private static final String BLOCK_START_STRING = "string_begin";
     private static final String BLOCK_END_STRING = "string_end";
     private static final String DEFAULT_KEY = "value";
-    private static final Pattern CONFIG_SECTION_PATTERN = Pattern.compile("^\\s*\\[[^]]+]", Pattern.MULTILINE);
+    /**
+     * Сколько символов из начала потока просматривается для определения формата.
+     */
+    private static final int SNIFF_LIMIT = 64 * 1024;
+    /**
+     * Примерный размер чанка (в символах) при параллельном парсинге BLOCK-файлов.
+     */
+    private static final int BLOCK_CHUNK_CHARS = 1024 * 1024;
+
+    private final ForkJoinPool parsePool;
+    private final boolean canonicalizeValues;
+
+    public DatParser(@Qualifier(ExecutorConfig.PARSE_POOL) ForkJoinPool parsePool,
+                     @Value("${difftool.parse.canonicalize-values:true}") boolean canonicalizeValues) {
+        this.parsePool = parsePool;
+        this.canonicalizeValues = canonicalizeValues;
+    }
 
     public ParseResult parse(String content) {
+        return parse(content, null);
+    }
+
+    /**
+     * Парсит содержимое строки. Если {@code formatOverride} задан, автоопределение формата пропускается.
+     */
+    public ParseResult parse(String content, DatFormat formatOverride) {
         if (content == null) {
             logger.warn("Передан null контент");
-            return new ParseResult(DatFormat.LINE, new LinkedHashMap<>());
+            return new ParseResult(DatFormat.LINE, new RecordTable());
         }
-        DatFormat format = detectFormat(content);
-        logger.debug("Определен формат: {}", format);
-        Map<String, LinkedHashMap<String, String>> records;
+        Detection detection = formatOverride != null
+            ? Detection.explicit(formatOverride)
+            : detectFormat(content, Math.min(content.length(), SNIFF_LIMIT));
+        try (BufferedReader reader = new BufferedReader(new StringReader(content))) {
+            return parse(reader, detection);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Потоковый парсинг: файл читается построчно из {@link InputStream} (UTF-8),
+     * без промежуточного byte[]/String со всем содержимым.
+     */
+    public ParseResult parse(InputStream input) throws IOException {
+        return parse(input, null);
+    }
+
+    public ParseResult parse(InputStream input, DatFormat formatOverride) throws IOException {
+        return parse(new InputStreamReader(input, StandardCharsets.UTF_8), formatOverride);
+    }
+
+    public ParseResult parse(Reader source) throws IOException {
+        return parse(source, null);
+    }
+
+    /**
+     * Потоковый парсинг из {@link Reader}. Без явного формата он определяется по первым
+     * {@value #SNIFF_LIMIT} символам, после чего поток перематывается к началу.
+     */
+    public ParseResult parse(Reader source, DatFormat formatOverride) throws IOException {
+        BufferedReader reader = source instanceof BufferedReader buffered
+            ? buffered
+            : new BufferedReader(source, SNIFF_LIMIT);
+        Detection detection = formatOverride != null
+            ? Detection.explicit(formatOverride)
+            : sniff(reader);
+        return parse(reader, detection);
+    }
+
+    private ParseResult parse(BufferedReader reader, Detection detection) throws IOException {
+        DatFormat format = detection.getFormat();
+        logger.debug("Формат: {} (уверенность {}, явно задан: {})",
+            format, detection.getConfidence(), detection.isExplicit());
+        RecordTable records;
         switch (format) {
-            case BLOCK -> records = parseBlock(content);
-            case CONFIG -> records = parseConfig(content);
-            case LINE -> records = parseLine(content);
-            default -> records = parseLine(content);
+            case BLOCK -> records = parseBlock(reader);
+            case CONFIG -> records = parseConfig(reader);
+            case LINE -> records = parseLine(reader);
+            default -> records = parseLine(reader);
         }
+        records.trimToSize();
         logger.info("Распарсено записей: {}", records.size());
-        return new ParseResult(format, records);
+        return new ParseResult(detection, records);
     }
 
-    private DatFormat detectFormat(String content) {
-        if (content == null) {
-            return DatFormat.LINE;
+    /**
+     * Определяет формат по началу потока и возвращает reader в исходную позицию.
+     */
+    private Detection sniff(BufferedReader reader) throws IOException {
+        char[] buffer = new char[SNIFF_LIMIT];
+        reader.mark(SNIFF_LIMIT);
+        int length = 0;
+        while (length < SNIFF_LIMIT) {
+            int read = reader.read(buffer, length, SNIFF_LIMIT - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        reader.reset();
+        return detectFormat(CharBuffer.wrap(buffer), length);
+    }
+
+    /**
+     * Однопроходное определение формата по первым {@code length} символам без копирования и
+     * приведения регистра. Приоритет как и раньше: маркеры блоков, затем секции INI, иначе LINE.
+     * Уверенность - доля непустых строк окна, которые соответствуют выбранному формату.
+     */
+    Detection detectFormat(CharSequence content, int length) {
+        int nonEmptyLines = 0;
+        int tabLines = 0;
+        int configLines = 0;
+        int sectionLines = 0;
+        int blockMarkers = 0;
+        int blockMarkersAtLineStart = 0;
+
+        int pos = 0;
+        while (pos < length) {
+            int first = pos;
+            while (first < length && isInlineWhitespace(content.charAt(first))) {
+                first++;
+            }
+            int end = first;
+            boolean hasTab = false;
+            boolean hasEquals = false;
+            int closingBracket = -1;
+            while (end < length) {
+                char c = content.charAt(end);
+                if (c == '\n' || c == '\r') {
+                    break;
+                }
+                if (c == '\t') {
+                    hasTab = true;
+                } else if (c == '=') {
+                    hasEquals = true;
+                } else if (c == ']' && closingBracket < 0) {
+                    closingBracket = end;
+                } else if ((c == 'i' || c == 'I' || c == 's' || c == 'S')
+                    && (regionMatchesIgnoreCase(content, end, length, BLOCK_START_ITEM)
+                        || regionMatchesIgnoreCase(content, end, length, BLOCK_START_STRING))) {
+                    blockMarkers++;
+                    if (end == first) {
+                        blockMarkersAtLineStart++;
+                    }
+                }
+                end++;
+            }
+
+            if (first < end) {
+                char lead = content.charAt(first);
+                if (lead != ';' && lead != '#') {
+                    nonEmptyLines++;
+                    if (hasTab) {
+                        tabLines++;
+                    }
+                    if (lead == '[' && closingBracket > first + 1) {
+                        sectionLines++;
+                        configLines++;
+                    } else if (hasEquals) {
+                        configLines++;
+                    }
+                }
+            }
+            pos = end + 1;
         }
-        String lower = content.toLowerCase(Locale.ROOT);
-        if (lower.contains(BLOCK_START_ITEM) || lower.contains(BLOCK_START_STRING)) {
-            return DatFormat.BLOCK;
+
+        if (blockMarkers > 0) {
+            return new Detection(DatFormat.BLOCK, blockMarkersAtLineStart > 0 ? 1.0 : 0.75, false);
         }
-        if (CONFIG_SECTION_PATTERN.matcher(content).find()) {
-            return DatFormat.CONFIG;
+        if (sectionLines > 0) {
+            return new Detection(DatFormat.CONFIG, ratio(configLines, nonEmptyLines), false);
         }
-        return DatFormat.LINE;
+        return new Detection(DatFormat.LINE, ratio(tabLines, nonEmptyLines), false);
     }
 
-    private Map<String, LinkedHashMap<String, String>> parseLine(String content) {
-        LinkedHashMap<String, LinkedHashMap<String, String>> records = new LinkedHashMap<>();
-        String[] lines = content.split("\\R");
-        for (String rawLine : lines) {
-            String line = rawLine.trim();
-            if (line.isEmpty()) {
-                continue;
+    private static boolean isInlineWhitespace(char c) {
+        return c <= ' ' && c != '\n' && c != '\r';
+    }
+
+    private static boolean regionMatchesIgnoreCase(CharSequence content, int offset, int length, String marker) {
+        if (offset + marker.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < marker.length(); i++) {
+            if (Character.toLowerCase(content.charAt(offset + i)) != marker.charAt(i)) {
+                return false;
             }
-            int tabIdx = line.indexOf('\t');
+        }
+        return true;
+    }
+
+    private static double ratio(int part, int total) {
+        return total == 0 ? 0.0 : Math.round(100.0 * part / total) / 100.0;
+    }
+
+    private RecordTable parseLine(BufferedReader reader) throws IOException {
+        RecordTable records = new RecordTable();
+        RecordTable.RowBuilder row = records.newRow();
+        String rawLine;
+        while ((rawLine = reader.readLine()) != null) {
+            int start = FieldTokenizer.trimStart(rawLine, 0, rawLine.length());
+            int end = FieldTokenizer.trimEnd(rawLine, start, rawLine.length());
+            int tabIdx = FieldTokenizer.indexOf(rawLine, '\t', start, end);
             if (tabIdx < 0) {
                 continue;
             }
-            String id = line.substring(0, tabIdx).trim();
-            String value = line.substring(tabIdx + 1).trim();
-            if (id.isEmpty()) {
+            int idEnd = FieldTokenizer.trimEnd(rawLine, start, tabIdx);
+            if (idEnd == start) {
                 continue;
             }
-            LinkedHashMap<String, String> fields = new LinkedHashMap<>();
-            fields.put(DEFAULT_KEY, value);
-            records.put(id, fields);
+            String id = rawLine.substring(start, idEnd);
+            String value = rawLine.substring(FieldTokenizer.trimStart(rawLine, tabIdx + 1, end), end);
+            row.put(DEFAULT_KEY, value).commit(id);
         }
         return records;
     }
 
-    private Map<String, LinkedHashMap<String, String>> parseBlock(String content) {
-        LinkedHashMap<String, LinkedHashMap<String, String>> records = new LinkedHashMap<>();
+    /**
+     * BLOCK-файл читается потоково и режется на чанки примерно по {@value #BLOCK_CHUNK_CHARS} символов.
+     * Граница чанка ставится только перед строкой, открывающей новый блок, поэтому чанки
+     * парсятся независимо в пуле ForkJoin. Результаты сливаются в исходном порядке, так что
+     * при повторе id, как и раньше, сохраняется позиция первого блока и поля последнего.
+     */
+    private RecordTable parseBlock(BufferedReader reader) throws IOException {
+        RecordTable records = null;
+        Deque<ForkJoinTask<RecordTable>> pending = new ArrayDeque<>();
+        int maxPending = parsePool.getParallelism() * 2;
+        // Общая на весь парсинг таблица имен полей: все чанки получают одни и те же экземпляры ключей
+        Map<String, String> keySymbols = new ConcurrentHashMap<>();
 
-        LinkedHashMap<String, String> currentBlock = null;
-        String currentId = null;
-        String[] lines = content.split("\\R");
-        logger.debug("Обработка {} строк в BLOCK режиме", lines.length);
+        List<String> chunk = new ArrayList<>();
+        long chunkChars = 0;
+        int lineCount = 0;
+        int chunkCount = 1;
+        String rawLine;
 
-        for (String rawLine : lines) {
-            if (rawLine == null) {
-                continue;
-            }
-            String line = rawLine.trim();
-            if (line.isEmpty()) {
-                continue;
+        while ((rawLine = reader.readLine()) != null) {
+            lineCount++;
+            if (chunkChars >= BLOCK_CHUNK_CHARS && opensBlock(rawLine)) {
+                List<String> lines = chunk;
+                pending.add(parsePool.submit(() -> parseBlockLines(lines, false, keySymbols)));
+                chunkCount++;
+                chunk = new ArrayList<>();
+                chunkChars = 0;
+                if (pending.size() >= maxPending) {
+                    records = merge(records, pending.poll().join());
+                }
             }
-            
+            chunk.add(rawLine);
+            chunkChars += rawLine.length();
+        }
+
+        // Последний чанк парсим в текущем потоке, пока остальные дорабатывают в пуле
+        RecordTable tail = parseBlockLines(chunk, true, keySymbols);
+        while (!pending.isEmpty()) {
+            records = merge(records, pending.poll().join());
+        }
+        records = merge(records, tail);
+
+        logger.debug("Обработано {} строк в BLOCK режиме, чанков: {}", lineCount, chunkCount);
+        logger.info("Итого распарсено блоков: {}", records.size());
+        return records;
+    }
+
+    private RecordTable merge(RecordTable records, RecordTable chunk) {
+        if (records == null) {
+            return chunk;
+        }
+        records.appendAll(chunk);
+        return records;
+    }
+
+    /**
+     * Парсит непрерывный участок BLOCK-файла. Незавершенный блок в конце учитывается
+     * только для последнего чанка: в середине файла его сбросит следующий *_begin.
+     */
+    private RecordTable parseBlockLines(List<String> lines, boolean lastChunk, Map<String, String> keySymbols) {
+        RecordTable records = new RecordTable();
+        RecordTable.RowBuilder currentBlock = records.newRow();
+        RecordTable.RowBuilder stringBlock = records.newRow();
+        boolean inBlock = false;
+        String currentId = null;
+        FieldTokenizer tokenizer = new FieldTokenizer();
+        SymbolTable keys = new SymbolTable(keySymbols);
+        ValueCache values = canonicalizeValues ? new ValueCache() : null;
+
+        for (String line : lines) {
             // Проверяем, является ли это однострочным блоком (string формат)
             if (line.contains(BLOCK_START_STRING) && line.contains(BLOCK_END_STRING)) {
                 // Однострочный string блок
-                parseSingleLineStringBlock(line, records);
+                parseSingleLineStringBlock(line, tokenizer, keys, values, stringBlock);
                 continue;
             }
             
             // Многострочный блок (item_name или string)
-            String[] tokens = line.split("\\t");
-            for (String token : tokens) {
-                String piece = token.trim();
-                if (piece.isEmpty()) {
-                    continue;
-                }
-                if (piece.equalsIgnoreCase(BLOCK_START_ITEM) || piece.equalsIgnoreCase(BLOCK_START_STRING)) {
-                    currentBlock = new LinkedHashMap<>();
+            tokenizer.reset(line);
+            while (tokenizer.next()) {
+                if (tokenizer.tokenEqualsIgnoreCase(BLOCK_START_ITEM) || tokenizer.tokenEqualsIgnoreCase(BLOCK_START_STRING)) {
+                    currentBlock.clear();
+                    inBlock = true;
                     currentId = null;
                     continue;
                 }
-                if (piece.equalsIgnoreCase(BLOCK_END_ITEM) || piece.equalsIgnoreCase(BLOCK_END_STRING)) {
-                    if (currentBlock != null && currentId != null) {
-                        records.put(currentId, currentBlock);
-                        logger.trace("Добавлен блок с id={}, полей={}", currentId, currentBlock.size());
-                    } else if (currentBlock != null) {
-                        logger.warn("Найден блок без id, пропускаем. Поля: {}", currentBlock.keySet());
+                if (tokenizer.tokenEqualsIgnoreCase(BLOCK_END_ITEM) || tokenizer.tokenEqualsIgnoreCase(BLOCK_END_STRING)) {
+                    if (inBlock && currentId != null) {
+                        logger.trace("Добавлен блок с id={}, полей={}", currentId, currentBlock.fieldCount());
+                        currentBlock.commit(currentId);
+                    } else if (inBlock) {
+                        logger.warn("Найден блок без id, пропускаем. Поля: {}", currentBlock.keys());
+                        currentBlock.clear();
                     }
-                    currentBlock = null;
+                    inBlock = false;
                     currentId = null;
                     continue;
                 }
-                if (currentBlock != null) {
-                    int eq = piece.indexOf('=');
-                    if (eq < 0) {
-                        continue;
-                    }
-                    String key = piece.substring(0, eq).trim();
-                    String value = piece.substring(eq + 1).trim();
+                if (inBlock && tokenizer.hasValue()) {
                     // Сохраняем значение как есть (с квадратными скобками, если есть)
-                    currentBlock.put(key, value);
+                    String value = tokenizer.value(values);
+                    currentBlock.put(tokenizer.key(keys), value);
                     // Для item_name блоков используется "id", для string блоков - "stringID"
-                    if ("id".equalsIgnoreCase(key) || "stringid".equalsIgnoreCase(key)) {
-                        // Для ID убираем скобки для использования как ключа
-                        currentId = stripBrackets(value);
-                        if (currentId == null || currentId.isEmpty()) {
-                            currentId = value; // Если скобок нет, используем как есть
-                        }
+                    if (tokenizer.keyEqualsIgnoreCase("id") || tokenizer.keyEqualsIgnoreCase("stringid")) {
+                        currentId = resolveId(value);
                     }
                 }
             }
         }
 
-        if (currentBlock != null && currentId != null) {
-            records.put(currentId, currentBlock);
-            logger.debug("Добавлен финальный блок с id={}, полей={}", currentId, currentBlock.size());
-        } else if (currentBlock != null) {
-            logger.warn("Остался незавершенный блок без id");
+        if (lastChunk) {
+            if (inBlock && currentId != null) {
+                logger.debug("Добавлен финальный блок с id={}, полей={}", currentId, currentBlock.fieldCount());
+                currentBlock.commit(currentId);
+            } else if (inBlock) {
+                logger.warn("Остался незавершенный блок без id");
+            }
         }
-
-        logger.info("Итого распарсено блоков: {}", records.size());
         return records;
     }
-    
+
+    /**
+     * Проверяет, что строка начинается с item_name_begin/string_begin, т.е. сбрасывает текущий блок.
+     * Однострочные string-блоки текущий блок не трогают, поэтому границей чанка не являются.
+     */
+    private boolean opensBlock(String rawLine) {
+        int first = 0;
+        int length = rawLine.length();
+        while (first < length && rawLine.charAt(first) <= ' ') {
+            first++;
+        }
+        String marker;
+        if (rawLine.regionMatches(true, first, BLOCK_START_ITEM, 0, BLOCK_START_ITEM.length())) {
+            marker = BLOCK_START_ITEM;
+        } else if (rawLine.regionMatches(true, first, BLOCK_START_STRING, 0, BLOCK_START_STRING.length())) {
+            marker = BLOCK_START_STRING;
+        } else {
+            return false;
+        }
+        for (int i = first + marker.length(); i < length; i++) {
+            char c = rawLine.charAt(i);
+            if (c == '\t') {
+                break;
+            }
+            if (c > ' ') {
+                return false;
+            }
+        }
+        return !(rawLine.contains(BLOCK_START_STRING) && rawLine.contains(BLOCK_END_STRING));
+    }
+
     /**
      * Парсит однострочный string блок формата: string_begin	stringID=1	string=[...]	string_end
      */
-    private void parseSingleLineStringBlock(String line, Map<String, LinkedHashMap<String, String>> records) {
-        LinkedHashMap<String, String> block = new LinkedHashMap<>();
-        String[] tokens = line.split("\\t");
+    private void parseSingleLineStringBlock(String line, FieldTokenizer tokenizer,
+                                            SymbolTable keys, ValueCache values,
+                                            RecordTable.RowBuilder block) {
         String currentId = null;
         
-        for (String token : tokens) {
-            String piece = token.trim();
-            if (piece.isEmpty() || 
-                piece.equalsIgnoreCase(BLOCK_START_STRING) || 
-                piece.equalsIgnoreCase(BLOCK_END_STRING)) {
+        tokenizer.reset(line);
+        while (tokenizer.next()) {
+            if (!tokenizer.hasValue()) {
                 continue;
             }
+            String value = tokenizer.value(values);
+            block.put(tokenizer.key(keys), value);
             
-            int eq = piece.indexOf('=');
-            if (eq < 0) {
-                continue;
-            }
-            String key = piece.substring(0, eq).trim();
-            String value = piece.substring(eq + 1).trim();
-            block.put(key, value);
-            
-            if ("stringid".equalsIgnoreCase(key)) {
-                currentId = stripBrackets(value);
-                if (currentId == null || currentId.isEmpty()) {
-                    currentId = value;
-                }
+            if (tokenizer.keyEqualsIgnoreCase("stringid")) {
+                currentId = resolveId(value);
             }
         }
         
         if (currentId != null && !block.isEmpty()) {
-            records.put(currentId, block);
-            logger.trace("Добавлен однострочный string блок с id={}, полей={}", currentId, block.size());
+            logger.trace("Добавлен однострочный string блок с id={}, полей={}", currentId, block.fieldCount());
+            block.commit(currentId);
         } else {
+            block.clear();
             logger.warn("Не удалось распарсить однострочный string блок: {}", line);
         }
     }
 
-    private Map<String, LinkedHashMap<String, String>> parseConfig(String content) {
-        LinkedHashMap<String, LinkedHashMap<String, String>> records = new LinkedHashMap<>();
-        String[] lines = content.split("\\R");
+    /**
+     * ID записи - значение без квадратных скобок; пустое после снятия скобок значение берется как есть.
+     * Без скобок возвращается тот же экземпляр строки, что хранится в поле.
+     */
+    private String resolveId(String value) {
+        int length = value.length();
+        if (length > 2 && value.charAt(0) == '[' && value.charAt(length - 1) == ']') {
+            return value.substring(1, length - 1);
+        }
+        return value;
+    }
+
+    private RecordTable parseConfig(BufferedReader reader) throws IOException {
+        RecordTable records = new RecordTable();
+        RecordTable.RowBuilder row = records.newRow();
         String currentSection = "DEFAULT";
+        String rawLine;
 
-        for (String rawLine : lines) {
-            if (rawLine == null) {
-                continue;
-            }
+        while ((rawLine = reader.readLine()) != null) {
             String line = rawLine.trim();
             if (line.isEmpty() || line.startsWith(";") || line.startsWith("#")) {
                 continue;
@@ -229,46 +478,73 @@ public class DatParser {
             String recordId = currentSection + "::" + key;
             String uniqueId = recordId;
             int duplicateIndex = 1;
-            while (records.containsKey(uniqueId)) {
+            while (records.containsId(uniqueId)) {
                 uniqueId = recordId + "#" + duplicateIndex++;
             }
 
-            LinkedHashMap<String, String> fields = new LinkedHashMap<>();
-            fields.put("section", currentSection);
-            fields.put("key", key);
-            fields.put("value", value);
-            records.put(uniqueId, fields);
+            row.put("section", currentSection)
+                .put("key", key)
+                .put("value", value)
+                .commit(uniqueId);
         }
 
         logger.info("CONFIG формат: распарсено {} записей", records.size());
         return records;
     }
 
-    private String stripBrackets(String value) {
-        if (value == null) {
-            return null;
+    /**
+     * Результат определения формата: формат, уверенность (0..1) и признак явного задания.
+     */
+    public static class Detection {
+        private final DatFormat format;
+        private final double confidence;
+        private final boolean explicit;
+
+        public Detection(DatFormat format, double confidence, boolean explicit) {
+            this.format = format;
+            this.confidence = confidence;
+            this.explicit = explicit;
         }
-        String trimmed = value.trim();
-        if (trimmed.startsWith("[") && trimmed.endsWith("]") && trimmed.length() >= 2) {
-            return trimmed.substring(1, trimmed.length() - 1);
+
+        public static Detection explicit(DatFormat format) {
+            return new Detection(format, 1.0, true);
+        }
+
+        public DatFormat getFormat() {
+            return format;
+        }
+
+        public double getConfidence() {
+            return confidence;
+        }
+
+        public boolean isExplicit() {
+            return explicit;
         }
-        return trimmed;
     }
 
     public static class ParseResult {
-        private final DatFormat format;
-        private final Map<String, LinkedHashMap<String, String>> records;
+        private final Detection detection;
+        private final RecordTable records;
 
-        public ParseResult(DatFormat format, Map<String, LinkedHashMap<String, String>> records) {
-            this.format = format;
+        public ParseResult(DatFormat format, RecordTable records) {
+            this(new Detection(format, 1.0, false), records);
+        }
+
+        public ParseResult(Detection detection, RecordTable records) {
+            this.detection = detection;
             this.records = records;
         }
 
         public DatFormat getFormat() {
-            return format;
+            return detection.getFormat();
+        }
+
+        public Detection getDetection() {
+            return detection;
         }
 
-        public Map<String, LinkedHashMap<String, String>> getRecords() {
+        public RecordTable getRecords() {
             return records;
         }
     }
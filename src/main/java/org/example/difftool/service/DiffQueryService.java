@@ -0,0 +1,117 @@
+package org.example.difftool.service;
+
+import org.example.difftool.model.DatRecord;
+import org.example.difftool.model.RecordPage;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Постраничная выдача записей сессии diff с фильтром по статусу записи и поиском по тексту.
+ * <p>
+ * Без фильтров страница берется прямо по индексам, поэтому первая страница отдается
+ * за время, не зависящее от размера diff. Поиск сужается через {@link SearchIndex}.
+ * Результат фильтра (список индексов) кешируется
+ * в сессии и пересчитывается только после операций слияния, если фильтр включает поиск.
+ */
+@Service
+public class DiffQueryService {
+
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+    private static final Set<String> STATUSES = Set.of("added", "removed", "changed", "same");
+
+    private final DiffService diffService;
+    private final SearchService searchService;
+
+    public DiffQueryService(DiffService diffService, SearchService searchService) {
+        this.diffService = diffService;
+        this.searchService = searchService;
+    }
+
+    /**
+     * @param statuses статусы записей через запятую (added, removed, changed, same) или пусто - все
+     * @param query    подстрока без учета регистра в id, именах полей и значениях или пусто
+     * @throws IllegalArgumentException при неизвестном статусе
+     */
+    public RecordPage page(DiffSessionStore.DiffSession session, int offset, int limit, String statuses, String query) {
+        int safeOffset = Math.max(0, offset);
+        int safeLimit = limit <= 0 ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+        Set<String> statusFilter = parseStatuses(statuses);
+        String needle = query != null && !query.isBlank() ? query.trim().toLowerCase(Locale.ROOT) : null;
+
+        List<DatRecord> records = new ArrayList<>();
+        if (statusFilter.isEmpty() && needle == null) {
+            int total = session.size();
+            for (int i = safeOffset; i < Math.min(total, safeOffset + safeLimit); i++) {
+                records.add(session.getRecord(i));
+            }
+            return new RecordPage(safeOffset, safeLimit, total, records);
+        }
+
+        int[] matches = matchingIndices(session, statusFilter, needle);
+        for (int i = safeOffset; i < Math.min(matches.length, safeOffset + safeLimit); i++) {
+            records.add(session.getRecord(matches[i]));
+        }
+        return new RecordPage(safeOffset, safeLimit, matches.length, records);
+    }
+
+    /**
+     * Индексы записей, подходящих под фильтр, в порядке diff.
+     */
+    int[] matchingIndices(DiffSessionStore.DiffSession session, Set<String> statusFilter, String needle) {
+        // Статус записи зависит только от OLD/NEW, а поиск учитывает и итоговые значения
+        String key = "filter:" + statusFilter + ":" + (needle != null ? session.getVersion() + ":" + needle : "");
+        return session.cached(key, () -> {
+            String[] recordStatuses = statusFilter.isEmpty() ? null : recordStatuses(session);
+            int[] candidates = needle != null ? searchService.candidates(session, needle) : null;
+            int candidateCount = candidates != null ? candidates.length : session.size();
+            int[] matches = new int[candidateCount];
+            int count = 0;
+            for (int c = 0; c < candidateCount; c++) {
+                int i = candidates != null ? candidates[c] : c;
+                if (recordStatuses != null && !statusFilter.contains(recordStatuses[i])) {
+                    continue;
+                }
+                if (needle != null && !searchService.matches(session.getRecord(i), needle)) {
+                    continue;
+                }
+                matches[count++] = i;
+            }
+            return Arrays.copyOf(matches, count);
+        }, matches -> 16L + matches.length * 4L);
+    }
+
+    private String[] recordStatuses(DiffSessionStore.DiffSession session) {
+        return session.cached("statuses", () -> {
+            String[] statuses = new String[session.size()];
+            for (int i = 0; i < statuses.length; i++) {
+                statuses[i] = diffService.recordStatus(session.getRecord(i));
+            }
+            return statuses;
+        }, statuses -> 16L + statuses.length * 4L); // только ссылки: статусы - общие константы
+    }
+
+    private Set<String> parseStatuses(String statuses) {
+        Set<String> result = new TreeSet<>();
+        if (statuses == null || statuses.isBlank()) {
+            return result;
+        }
+        for (String status : statuses.split(",")) {
+            String normalized = status.trim().toLowerCase(Locale.ROOT);
+            if (normalized.isEmpty()) {
+                continue;
+            }
+            if (!STATUSES.contains(normalized)) {
+                throw new IllegalArgumentException("Неизвестный статус записи: " + status);
+            }
+            result.add(normalized);
+        }
+        return result;
+    }
+}
@@ -1,60 +1,247 @@
 package org.example.difftool.service;
 
+import org.example.difftool.config.ExecutorConfig;
 import org.example.difftool.model.DatField;
 import org.example.difftool.model.DatRecord;
+import org.example.difftool.model.DiffSummary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 
 @Service
 public class DiffService {
 
     private static final Logger logger = LoggerFactory.getLogger(DiffService.class);
+    private static final int[] EMPTY_LAYOUT = new int[0];
 
-    public List<DatRecord> buildDiff(Map<String, LinkedHashMap<String, String>> oldRecords,
-                                     Map<String, LinkedHashMap<String, String>> newRecords) {
+    /**
+     * Размер диапазона строк для одной задачи. Таблицы меньше одного диапазона сравниваются в текущем потоке.
+     */
+    static final int DIFF_CHUNK_ROWS = 16_384;
+
+    private final ForkJoinPool parsePool;
+
+    public DiffService(@Qualifier(ExecutorConfig.PARSE_POOL) ForkJoinPool parsePool) {
+        this.parsePool = parsePool;
+    }
+
+    /**
+     * Сравнивает две таблицы записей. Порядок результата: записи NEW в порядке файла,
+     * затем записи, которые есть только в OLD. Поля записи: сначала в порядке NEW,
+     * затем поля, которые есть только в OLD.
+     * <p>
+     * Колонки таблиц сопоставляются по имени один раз, дальше сравнение идет по номерам колонок.
+     * Большие таблицы делятся на диапазоны строк, которые сравниваются в пуле независимо
+     * и склеиваются в исходном порядке.
+     */
+    public List<DatRecord> buildDiff(RecordTable oldRecords, RecordTable newRecords) {
+        List<DatRecord> result = new ArrayList<>(newRecords.size());
+        streamDiff(oldRecords, newRecords, result::addAll);
+        return result;
+    }
+
+    /**
+     * То же, что {@link #buildDiff}, но отдает результат частями по мере готовности диапазонов.
+     * Части передаются в {@code sink} в текущем потоке и в порядке результата {@link #buildDiff},
+     * поэтому первые записи можно отправлять клиенту, пока остальные еще сравниваются.
+     */
+    public void streamDiff(RecordTable oldRecords, RecordTable newRecords, Consumer<List<DatRecord>> sink) {
 
         logger.info("Построение diff: OLD записей={}, NEW записей={}", oldRecords.size(), newRecords.size());
-        List<DatRecord> result = new ArrayList<>();
-        Set<String> allIds = new LinkedHashSet<>();
-        allIds.addAll(newRecords.keySet());
-        allIds.addAll(oldRecords.keySet());
-        logger.debug("Всего уникальных ID: {}", allIds.size());
-
-        for (String id : allIds) {
-            LinkedHashMap<String, String> oldFields = oldRecords.getOrDefault(id, new LinkedHashMap<>());
-            LinkedHashMap<String, String> newFields = newRecords.getOrDefault(id, new LinkedHashMap<>());
-
-            Set<String> allKeys = new LinkedHashSet<>();
-            allKeys.addAll(newFields.keySet());
-            allKeys.addAll(oldFields.keySet());
-
-            List<DatField> diffFields = new ArrayList<>();
-            for (String key : allKeys) {
-                String oldValue = oldFields.get(key);
-                String newValue = newFields.get(key);
-                
-                // Нормализуем значения для сравнения (убираем лишние пробелы)
-                String normalizedOld = normalizeValue(oldValue);
-                String normalizedNew = normalizeValue(newValue);
-                
-                DatField field = new DatField();
-                field.setKey(key);
-                field.setOldValue(oldValue); // Сохраняем оригинальные значения для отображения
-                field.setNewValue(newValue);
-                field.setMergedValue(newValue != null ? newValue : oldValue);
-                field.setStatus(resolveStatus(normalizedOld, normalizedNew)); // Сравниваем нормализованные
-                diffFields.add(field);
+        int[] newToOld = mapColumns(newRecords, oldRecords);
+        int[] oldToNew = mapColumns(oldRecords, newRecords);
+
+        if (oldRecords.size() + newRecords.size() <= DIFF_CHUNK_ROWS) {
+            List<DatRecord> result = new ArrayList<>(newRecords.size());
+            diffNewRows(oldRecords, newRecords, newToOld, oldToNew, 0, newRecords.size(), result);
+            diffOldOnlyRows(oldRecords, newRecords, newToOld, oldToNew, 0, oldRecords.size(), result);
+            logger.debug("Всего уникальных ID: {}", result.size());
+            sink.accept(result);
+            return;
+        }
+
+        List<ForkJoinTask<List<DatRecord>>> tasks = new ArrayList<>();
+        for (int from = 0; from < newRecords.size(); from += DIFF_CHUNK_ROWS) {
+            int start = from;
+            int end = Math.min(from + DIFF_CHUNK_ROWS, newRecords.size());
+            tasks.add(parsePool.submit(() -> {
+                List<DatRecord> part = new ArrayList<>(end - start);
+                diffNewRows(oldRecords, newRecords, newToOld, oldToNew, start, end, part);
+                return part;
+            }));
+        }
+        for (int from = 0; from < oldRecords.size(); from += DIFF_CHUNK_ROWS) {
+            int start = from;
+            int end = Math.min(from + DIFF_CHUNK_ROWS, oldRecords.size());
+            tasks.add(parsePool.submit(() -> {
+                List<DatRecord> part = new ArrayList<>();
+                diffOldOnlyRows(oldRecords, newRecords, newToOld, oldToNew, start, end, part);
+                return part;
+            }));
+        }
+
+        int total = 0;
+        try {
+            for (ForkJoinTask<List<DatRecord>> task : tasks) {
+                List<DatRecord> part = task.join();
+                total += part.size();
+                sink.accept(part);
             }
+        } finally {
+            tasks.forEach(task -> task.cancel(false));
+        }
+        logger.debug("Всего уникальных ID: {}, задач: {}", total, tasks.size());
+    }
 
-            DatRecord record = new DatRecord();
-            record.setId(id);
-            record.setFields(diffFields);
-            result.add(record);
+    private void diffNewRows(RecordTable oldRecords, RecordTable newRecords, int[] newToOld, int[] oldToNew,
+                             int from, int to, List<DatRecord> out) {
+        for (int newRow = from; newRow < to; newRow++) {
+            String id = newRecords.id(newRow);
+            int oldRow = oldRecords.rowOf(id);
+            out.add(diffRow(id, oldRecords, oldRow, newRecords, newRow, newToOld, oldToNew));
         }
-        return result;
+    }
+
+    private void diffOldOnlyRows(RecordTable oldRecords, RecordTable newRecords, int[] newToOld, int[] oldToNew,
+                                 int from, int to, List<DatRecord> out) {
+        for (int oldRow = from; oldRow < to; oldRow++) {
+            String id = oldRecords.id(oldRow);
+            if (!newRecords.containsId(id)) {
+                out.add(diffRow(id, oldRecords, oldRow, newRecords, -1, newToOld, oldToNew));
+            }
+        }
+    }
+
+    /**
+     * Статус записи целиком: "added" - есть только в NEW, "removed" - только в OLD,
+     * "changed" - есть хотя бы одно несовпадающее поле, иначе "same".
+     */
+    public String recordStatus(DatRecord record) {
+        if (record.isSame()) {
+            return "same";
+        }
+        boolean hasOld = false;
+        boolean hasNew = false;
+        boolean hasChanges = false;
+        for (DatField field : record.getFields()) {
+            hasOld |= field.getOldValue() != null;
+            hasNew |= field.getNewValue() != null;
+            hasChanges |= !"same".equals(field.getStatus());
+        }
+        if (!hasOld && hasNew) {
+            return "added";
+        }
+        if (hasOld && !hasNew) {
+            return "removed";
+        }
+        return hasChanges ? "changed" : "same";
+    }
+
+    public DiffSummary summarize(List<DatRecord> records) {
+        DiffSummary summary = new DiffSummary();
+        summary.setTotal(records.size());
+        for (DatRecord record : records) {
+            switch (recordStatus(record)) {
+                case "added" -> summary.setAdded(summary.getAdded() + 1);
+                case "removed" -> summary.setRemoved(summary.getRemoved() + 1);
+                case "changed" -> summary.setChanged(summary.getChanged() + 1);
+                default -> summary.setUnchanged(summary.getUnchanged() + 1);
+            }
+        }
+        return summary;
+    }
+
+    private DatRecord diffRow(String id, RecordTable oldRecords, int oldRow, RecordTable newRecords, int newRow,
+                              int[] newToOld, int[] oldToNew) {
+        if (oldRow >= 0 && newRow >= 0 && oldRecords.fingerprint(oldRow) == newRecords.fingerprint(newRow)
+            && sameRow(oldRecords, oldRow, newRecords, newRow, newToOld)) {
+            return sameRecord(id, newRecords, newRow);
+        }
+        int[] newLayout = newRow >= 0 ? newRecords.layout(newRow) : EMPTY_LAYOUT;
+        int[] oldLayout = oldRow >= 0 ? oldRecords.layout(oldRow) : EMPTY_LAYOUT;
+        List<DatField> diffFields = new ArrayList<>(Math.max(newLayout.length, oldLayout.length));
+
+        for (int newColumn : newLayout) {
+            int oldColumn = newToOld[newColumn];
+            String oldValue = oldRow >= 0 && oldColumn >= 0 ? oldRecords.value(oldColumn, oldRow) : null;
+            diffFields.add(diffField(newRecords.columnKey(newColumn), oldValue, newRecords.value(newColumn, newRow)));
+        }
+        for (int oldColumn : oldLayout) {
+            int newColumn = oldToNew[oldColumn];
+            if (newRow >= 0 && newColumn >= 0 && newRecords.value(newColumn, newRow) != null) {
+                continue;
+            }
+            diffFields.add(diffField(oldRecords.columnKey(oldColumn), oldRecords.value(oldColumn, oldRow), null));
+        }
+
+        DatRecord record = new DatRecord();
+        record.setId(id);
+        record.setFields(diffFields);
+        return record;
+    }
+
+    /**
+     * Подтверждает совпадение отпечатков: тот же набор полей с теми же значениями.
+     */
+    private boolean sameRow(RecordTable oldRecords, int oldRow, RecordTable newRecords, int newRow, int[] newToOld) {
+        int[] newLayout = newRecords.layout(newRow);
+        if (newLayout.length != oldRecords.layout(oldRow).length) {
+            return false;
+        }
+        for (int newColumn : newLayout) {
+            int oldColumn = newToOld[newColumn];
+            if (oldColumn < 0 || !newRecords.value(newColumn, newRow).equals(oldRecords.value(oldColumn, oldRow))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Запись без изменений передается компактно: только пары ключ-значение в порядке NEW.
+     */
+    private DatRecord sameRecord(String id, RecordTable newRecords, int newRow) {
+        int[] layout = newRecords.layout(newRow);
+        String[] values = new String[layout.length * 2];
+        for (int i = 0; i < layout.length; i++) {
+            values[2 * i] = newRecords.columnKey(layout[i]);
+            values[2 * i + 1] = newRecords.value(layout[i], newRow);
+        }
+        DatRecord record = new DatRecord(id);
+        record.setSame(true);
+        record.setValues(Arrays.asList(values));
+        return record;
+    }
+
+    private DatField diffField(String key, String oldValue, String newValue) {
+        // Нормализуем значения для сравнения (убираем лишние пробелы)
+        String normalizedOld = normalizeValue(oldValue);
+        String normalizedNew = normalizeValue(newValue);
+
+        DatField field = new DatField();
+        field.setKey(key);
+        field.setOldValue(oldValue); // Сохраняем оригинальные значения для отображения
+        field.setNewValue(newValue);
+        field.setMergedValue(newValue != null ? newValue : oldValue);
+        field.setStatus(resolveStatus(normalizedOld, normalizedNew)); // Сравниваем нормализованные
+        return field;
+    }
+
+    /**
+     * Для каждой колонки {@code from} - номер колонки с тем же именем в {@code to} или -1.
+     */
+    private int[] mapColumns(RecordTable from, RecordTable to) {
+        int[] mapping = new int[from.columnCount()];
+        for (int column = 0; column < mapping.length; column++) {
+            mapping[column] = to.columnOf(from.columnKey(column));
+        }
+        return mapping;
     }
 
     private String resolveStatus(String oldValue, String newValue) {
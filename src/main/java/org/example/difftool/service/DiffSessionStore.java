@@ -0,0 +1,352 @@
+package org.example.difftool.service;
+
+import org.example.difftool.model.DatField;
+import org.example.difftool.model.DatFormat;
+import org.example.difftool.model.DatRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Хранит diff загрузок на сервере, чтобы экспорт получал от клиента только решения по слиянию,
+ * а не весь список записей.
+ * <p>
+ * Сессии вытесняются по трем правилам: не использовались дольше {@code ttlMinutes}, их больше
+ * {@code maxEntries}, или их суммарный оценочный размер превышает {@code maxMemoryBytes}.
+ * При переполнении первыми уходят самые давно использованные. Просроченные сессии
+ * удаляются при любом обращении к хранилищу. Размер сессии растет, когда по ней строятся
+ * поисковый индекс, группы изменений или результаты фильтров, и лимит памяти проверяется заново.
+ */
+@Service
+public class DiffSessionStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiffSessionStore.class);
+    private static final int MAX_CACHED_VIEWS = 8;
+
+    private final int maxEntries;
+    private final long maxMemoryBytes;
+    private final long ttlNanos;
+    private final Map<String, DiffSession> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+
+    public DiffSessionStore(@Value("${difftool.diff.session.max-entries:8}") int maxEntries,
+                            @Value("${difftool.diff.session.max-memory-mb:1024}") long maxMemoryMb,
+                            @Value("${difftool.diff.session.ttl-minutes:60}") long ttlMinutes) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxMemoryBytes = Math.max(1, maxMemoryMb) * 1024 * 1024;
+        this.ttlNanos = TimeUnit.MINUTES.toNanos(Math.max(1, ttlMinutes));
+    }
+
+    /**
+     * Сохраняет diff и возвращает id сессии. Diff больше лимита памяти все равно сохраняется,
+     * вытесняя все остальные сессии.
+     */
+    public String put(DatFormat format, List<DatRecord> records) {
+        String id = UUID.randomUUID().toString();
+        DiffSession session = new DiffSession(this, id, format, records, estimateBytes(records), System.nanoTime());
+        synchronized (sessions) {
+            removeExpired(session.lastAccess);
+            sessions.put(id, session);
+            usedBytes += session.estimatedBytes;
+            evictOverflow(id);
+        }
+        logger.info("Сессия diff {} создана: записей={}, ~{} MB", id, records.size(), session.estimatedBytes >> 20);
+        return id;
+    }
+
+    /**
+     * @return сессия или {@code null}, если она не найдена, просрочена или вытеснена
+     */
+    public DiffSession get(String id) {
+        long now = System.nanoTime();
+        synchronized (sessions) {
+            removeExpired(now);
+            DiffSession session = sessions.get(id);
+            if (session != null) {
+                session.lastAccess = now;
+            }
+            return session;
+        }
+    }
+
+    private void removeExpired(long now) {
+        Iterator<Map.Entry<String, DiffSession>> iterator = sessions.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, DiffSession> entry = iterator.next();
+            if (now - entry.getValue().lastAccess > ttlNanos) {
+                iterator.remove();
+                usedBytes -= entry.getValue().estimatedBytes;
+                logger.info("Сессия diff {} просрочена", entry.getKey());
+            }
+        }
+    }
+
+    private void evictOverflow(String keepId) {
+        Iterator<Map.Entry<String, DiffSession>> iterator = sessions.entrySet().iterator();
+        while ((sessions.size() > maxEntries || usedBytes > maxMemoryBytes) && iterator.hasNext()) {
+            Map.Entry<String, DiffSession> entry = iterator.next();
+            if (entry.getKey().equals(keepId)) {
+                continue;
+            }
+            iterator.remove();
+            usedBytes -= entry.getValue().estimatedBytes;
+            logger.info("Сессия diff {} вытеснена (сессий={}, ~{} MB)", entry.getKey(), sessions.size(), usedBytes >> 20);
+        }
+    }
+
+    /**
+     * Добавляет к размеру сессии память построенной по ней структуры (отрицательное значение -
+     * освобожденную память) и вытесняет другие сессии, если лимит превышен. Для уже удаленной
+     * сессии ничего не делает.
+     */
+    private void addDerivedBytes(String id, DiffSession session, long bytes) {
+        synchronized (sessions) {
+            if (!sessions.containsKey(id)) {
+                return;
+            }
+            session.estimatedBytes += bytes;
+            usedBytes += bytes;
+            evictOverflow(id);
+        }
+    }
+
+    /**
+     * Грубая оценка занимаемой памяти: заголовки объектов и символы значений.
+     * Строки, общие с другими записями, считаются повторно, поэтому оценка завышена.
+     */
+    static long estimateBytes(List<DatRecord> records) {
+        long bytes = 16L + records.size() * 64L;
+        for (DatRecord record : records) {
+            bytes += stringBytes(record.getId());
+            if (record.getValues() != null) {
+                bytes += 16L + record.getValues().size() * 4L;
+                for (int i = 1; i < record.getValues().size(); i += 2) {
+                    bytes += stringBytes(record.getValues().get(i));
+                }
+                continue;
+            }
+            for (DatField field : record.getFields()) {
+                bytes += 48 + stringBytes(field.getOldValue()) + stringBytes(field.getNewValue());
+            }
+        }
+        return bytes;
+    }
+
+    private static long stringBytes(String value) {
+        return value != null ? 40L + value.length() : 0;
+    }
+
+    /**
+     * Diff одной загрузки. Записи не изменяются на месте: операции слияния подменяют запись
+     * измененной копией, поэтому снимок {@link #getRecords()} остается согласованным.
+     */
+    public static class DiffSession {
+        private final DiffSessionStore store;
+        private final String id;
+        private final DatFormat format;
+        private final List<DatRecord> records;
+        /** Меняется под блокировкой хранилища. */
+        private volatile long estimatedBytes;
+        private volatile long lastAccess;
+        private Map<String, Integer> indexById;
+        private final BitSet modified = new BitSet();
+        private CompletableFuture<SearchIndex> searchIndex;
+        private CompletableFuture<ChangeGroups> changeGroups;
+        private long version;
+        private final Map<String, CachedView> cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedView> eldest) {
+                if (size() <= MAX_CACHED_VIEWS) {
+                    return false;
+                }
+                evictedViewBytes += eldest.getValue().bytes();
+                return true;
+            }
+        };
+        /** Память вытесненных из {@link #cache} значений, еще не вычтенная из размера сессии. */
+        private long evictedViewBytes;
+
+        DiffSession(DiffSessionStore store, String id, DatFormat format, List<DatRecord> records,
+                    long estimatedBytes, long lastAccess) {
+            this.store = store;
+            this.id = id;
+            this.format = format;
+            this.records = new ArrayList<>(records);
+            this.estimatedBytes = estimatedBytes;
+            this.lastAccess = lastAccess;
+        }
+
+        public DatFormat getFormat() {
+            return format;
+        }
+
+        /**
+         * Снимок записей diff с учетом примененных операций.
+         */
+        public synchronized List<DatRecord> getRecords() {
+            return List.copyOf(records);
+        }
+
+        public synchronized int size() {
+            return records.size();
+        }
+
+        public synchronized DatRecord getRecord(int index) {
+            return records.get(index);
+        }
+
+        /**
+         * @return индекс записи с id или -1
+         */
+        public synchronized int indexOf(String id) {
+            if (indexById == null) {
+                indexById = new HashMap<>(records.size() * 2);
+                for (int i = 0; i < records.size(); i++) {
+                    indexById.putIfAbsent(records.get(i).getId(), i);
+                }
+            }
+            return indexById.getOrDefault(id, -1);
+        }
+
+        /**
+         * Подменяет записи по индексам и возвращает новую версию сессии.
+         */
+        public synchronized long replaceRecords(Map<Integer, DatRecord> replacements) {
+            replacements.forEach((index, record) -> {
+                records.set(index, record);
+                modified.set(index);
+            });
+            return ++version;
+        }
+
+        /**
+         * Индексы записей, измененных операциями слияния, по возрастанию.
+         */
+        public synchronized int[] modifiedIndices() {
+            return modified.stream().toArray();
+        }
+
+        /**
+         * Поисковый индекс по id и значениям OLD/NEW. Строится при первом поиске в потоке запроса,
+         * один раз на сессию: параллельные запросы ждут того же построения. Память индекса
+         * добавляется к размеру сессии. Индекс строится по снимку записей без блокировки сессии:
+         * операции слияния не меняют OLD/NEW, поэтому индекс не перестраивается.
+         */
+        public SearchIndex searchIndex() {
+            return derived(() -> searchIndex, future -> searchIndex = future, SearchIndex::build,
+                           SearchIndex::estimatedBytes, "Поисковый индекс построен");
+        }
+
+        /**
+         * Группы одинаковых изменений. Строятся при первом открытии массовых действий так же,
+         * как {@link #searchIndex()}: операции слияния не меняют ключи, OLD/NEW и порядок полей.
+         */
+        public ChangeGroups changeGroups() {
+            return derived(() -> changeGroups, future -> changeGroups = future, ChangeGroups::build,
+                           ChangeGroups::estimatedBytes, "Группы изменений построены");
+        }
+
+        /**
+         * Производная структура, которая строится один раз на сессию. Под блокировкой сессии
+         * только читается и ставится future ({@code current}/{@code install}); построение и
+         * ожидание чужого построения идут без блокировки, чтобы остальные запросы к сессии
+         * не ждали их. Первый запрос строит структуру по снимку в своем потоке, добавляет ее
+         * память к сессии и завершает future для остальных. Если построение упало, future
+         * снимается, и следующий запрос строит заново.
+         */
+        private <T> T derived(Supplier<CompletableFuture<T>> current, Consumer<CompletableFuture<T>> install,
+                              Function<List<DatRecord>, T> builder, ToLongFunction<T> size, String message) {
+            List<DatRecord> snapshot = null;
+            CompletableFuture<T> future;
+            synchronized (this) {
+                future = current.get();
+                if (future == null) {
+                    snapshot = List.copyOf(records);
+                    future = new CompletableFuture<>();
+                    install.accept(future);
+                }
+            }
+            if (snapshot == null) {
+                return future.join();
+            }
+            try {
+                long started = System.nanoTime();
+                T built = builder.apply(snapshot);
+                long bytes = size.applyAsLong(built);
+                logger.info("{}: сессия {}, записей={}, ~{} MB, {} мс", message, id, snapshot.size(), bytes >> 20,
+                            (System.nanoTime() - started) / 1_000_000);
+                store.addDerivedBytes(id, this, bytes);
+                future.complete(built);
+                return built;
+            } catch (Throwable e) {
+                synchronized (this) {
+                    if (current.get() == future) {
+                        install.accept(null);
+                    }
+                }
+                future.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        public synchronized long getVersion() {
+            return version;
+        }
+
+        /**
+         * Производные данные сессии (статусы, результаты фильтров), вычисляемые один раз.
+         * Ключ должен включать версию, если данные зависят от операций слияния.
+         * <p>
+         * Значение вычисляется без блокировки сессии, чтобы долгий фильтр не останавливал
+         * остальные запросы к ней; параллельные запросы могут вычислить его дважды, тогда
+         * остается первое. Память значения ({@code size}) добавляется к размеру сессии
+         * и вычитается, когда значение вытесняется из кеша.
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T cached(String key, Supplier<T> supplier, ToLongFunction<T> size) {
+            synchronized (this) {
+                CachedView view = cache.get(key);
+                if (view != null) {
+                    return (T) view.value();
+                }
+            }
+            T value = supplier.get();
+            long bytes = size.applyAsLong(value);
+            long delta;
+            synchronized (this) {
+                CachedView view = cache.get(key);
+                if (view != null) {
+                    return (T) view.value();
+                }
+                cache.put(key, new CachedView(value, bytes));
+                delta = bytes - evictedViewBytes;
+                evictedViewBytes = 0;
+            }
+            store.addDerivedBytes(id, this, delta);
+            return value;
+        }
+
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        private record CachedView(Object value, long bytes) {
+        }
+    }
+}
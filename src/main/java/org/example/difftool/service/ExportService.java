@@ -1,71 +1,174 @@
 package org.example.difftool.service;
 
+import org.example.difftool.config.ExecutorConfig;
 import org.example.difftool.model.DatField;
 import org.example.difftool.model.DatFormat;
 import org.example.difftool.model.DatRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 @Service
 public class ExportService {
 
-    private static final String DEFAULT_LINE_KEY = "value";
+    private static final Logger logger = LoggerFactory.getLogger(ExportService.class);
+    private static final int WRITE_BUFFER_CHARS = 64 * 1024;
+    private static final int HEADER_ENTRY = Integer.MIN_VALUE;
+
     private final MergeService mergeService;
+    private final ForkJoinPool parsePool;
+    private final boolean parallel;
+    private final int chunkRecords;
 
-    public ExportService(MergeService mergeService) {
+    public ExportService(MergeService mergeService,
+                         @Qualifier(ExecutorConfig.PARSE_POOL) ForkJoinPool parsePool,
+                         @Value("${difftool.export.parallel:true}") boolean parallel,
+                         @Value("${difftool.export.chunk-records:4096}") int chunkRecords) {
         this.mergeService = mergeService;
+        this.parsePool = parsePool;
+        this.parallel = parallel;
+        this.chunkRecords = Math.max(1, chunkRecords);
     }
 
-    public byte[] export(List<DatRecord> records, DatFormat format) {
-        String payload = switch (format) {
-            case BLOCK -> exportBlock(records);
-            case CONFIG -> exportConfig(records);
-            case LINE -> exportLine(records);
-            default -> exportLine(records);
-        };
-        return payload.getBytes(StandardCharsets.UTF_8);
+    /**
+     * Пишет итоговый файл в {@code output} через буферизованный UTF-8 writer, не собирая его в памяти.
+     * Компактные записи разворачиваются по одной. Поток не закрывается.
+     * <p>
+     * Результат совпадает с прежним {@code String.trim()} всего файла: завершающие переводы
+     * строк последнего блока не пишутся.
+     * <p>
+     * Если записей больше одного чанка, чанки по {@code chunkRecords} записей рендерятся
+     * в байты в пуле и пишутся в исходном порядке. Вывод байт в байт совпадает с
+     * последовательным: разделитель перед первым блоком чанка зависит только от
+     * предыдущего непустого чанка и дописывается при склейке.
+     */
+    public void export(List<DatRecord> records, DatFormat format, OutputStream output) throws IOException {
+        ChunkRenderer renderer;
+        int size;
+        if (format == DatFormat.CONFIG) {
+            ConfigRenderer config = configRenderer(records);
+            renderer = config;
+            size = config.size();
+        } else {
+            renderer = format == DatFormat.BLOCK
+                ? (from, to, writer) -> exportBlock(records, from, to, writer)
+                : (from, to, writer) -> exportLine(records, from, to, writer);
+            size = records.size();
+        }
+        if (!parallel || size <= chunkRecords) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), WRITE_BUFFER_CHARS);
+            renderer.render(0, size, writer);
+            writer.flush();
+            return;
+        }
+        long started = System.nanoTime();
+        writeChunks(size, renderer, output);
+        logger.debug("Параллельный экспорт {}: записей={}, {} мс", format, records.size(),
+                     (System.nanoTime() - started) / 1_000_000);
     }
 
-    private String exportLine(List<DatRecord> records) {
-        return records.stream()
-            .filter(record -> !record.isDeleted())
-            .map(record -> {
-                DatField field = record.getFields().stream()
-                    .filter(f -> DEFAULT_LINE_KEY.equalsIgnoreCase(f.getKey()))
-                    .findFirst()
-                    .orElse(record.getFields().isEmpty() ? null : record.getFields().get(0));
-                if (field == null) {
-                    return null;
+    /**
+     * Рендерит чанки в пуле и пишет их по порядку. В работе одновременно не больше
+     * двух чанков на поток пула, поэтому память не растет с размером файла.
+     */
+    private void writeChunks(int size, ChunkRenderer renderer, OutputStream output) throws IOException {
+        int chunks = (size + chunkRecords - 1) / chunkRecords;
+        int window = Math.max(2, parsePool.getParallelism() * 2);
+        ArrayDeque<ForkJoinTask<RenderedChunk>> inFlight = new ArrayDeque<>(window);
+        byte[] separator = new byte[0];
+        int next = 0;
+        try {
+            while (next < chunks || !inFlight.isEmpty()) {
+                while (next < chunks && inFlight.size() < window) {
+                    int from = next * chunkRecords;
+                    int to = Math.min(from + chunkRecords, size);
+                    inFlight.add(parsePool.submit(() -> renderChunk(renderer, from, to)));
+                    next++;
                 }
-                String merged = mergeService.resolveMergedValue(field);
-                if (merged == null) {
-                    return null;
+                RenderedChunk chunk = inFlight.poll().join();
+                if (chunk.bytes().size() > 0) {
+                    output.write(separator);
+                    chunk.bytes().writeTo(output);
+                    separator = chunk.separator().getBytes(StandardCharsets.UTF_8);
                 }
-                return record.getId() + "\t" + merged;
-            })
-            .filter(line -> line != null && !line.isEmpty())
-            .collect(Collectors.joining("\n"));
+            }
+        } finally {
+            inFlight.forEach(task -> task.cancel(false));
+        }
+        output.flush();
+    }
+
+    private static RenderedChunk renderChunk(ChunkRenderer renderer, int from, int to) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(bytes, StandardCharsets.UTF_8);
+        String separator = renderer.render(from, to, writer);
+        writer.flush();
+        return new RenderedChunk(bytes, separator);
+    }
+
+    /**
+     * @return разделитель перед следующей строкой, если в диапазоне была хоть одна строка, иначе ""
+     */
+    private String exportLine(List<DatRecord> records, int from, int to, Writer writer) throws IOException {
+        String separator = "";
+        for (int index = from; index < to; index++) {
+            DatRecord source = records.get(index);
+            if (source.isDeleted()) {
+                continue;
+            }
+            DatRecord record = mergeService.expanded(source);
+            FieldRoles roles = FieldRoles.of(record);
+            DatField field = roles.value() != null ? roles.value()
+                : record.getFields().isEmpty() ? null : record.getFields().get(0);
+            if (field == null) {
+                continue;
+            }
+            String merged = mergeService.resolveMergedValue(field);
+            if (merged == null) {
+                continue;
+            }
+            writer.write(separator);
+            separator = "\n";
+            writer.append(record.getId()).append('\t').append(merged);
+        }
+        return separator;
     }
 
-    private String exportBlock(List<DatRecord> records) {
-        StringBuilder builder = new StringBuilder();
-        for (DatRecord record : records) {
-            if (record.isDeleted()) {
+    /**
+     * @return разделитель перед следующим блоком (зависит от типа последнего блока) или "", если блоков не было
+     */
+    private String exportBlock(List<DatRecord> records, int from, int to, Writer writer) throws IOException {
+        // Разделитель после предыдущего блока пишется перед следующим, чтобы файл не кончался переводом строки
+        String separator = "";
+        for (int index = from; index < to; index++) {
+            DatRecord source = records.get(index);
+            if (source.isDeleted()) {
                 continue;
             }
+            DatRecord record = mergeService.expanded(source);
+            FieldRoles roles = FieldRoles.of(record);
+            writer.write(separator);
             
             // Определяем тип блока: если есть поле stringID, то это string блок
-            boolean isStringBlock = record.getFields().stream()
-                .anyMatch(field -> "stringid".equalsIgnoreCase(field.getKey()));
-            
-            if (isStringBlock) {
+            if (roles.stringId() != null) {
                 // Однострочный формат string блока
-                builder.append("string_begin\t");
+                writer.write("string_begin\t");
                 boolean hasStringIdField = false;
                 StringBuilder fieldsBuilder = new StringBuilder();
                 
@@ -80,7 +183,7 @@ public class ExportService {
                     if ("stringid".equalsIgnoreCase(field.getKey())) {
                         hasStringIdField = true;
                         // stringID должен быть первым полем
-                        builder.append(field.getKey()).append("=").append(merged).append("\t");
+                        writer.append(field.getKey()).append("=").append(merged).append("\t");
                     } else {
                         fieldsBuilder.append(field.getKey()).append("=").append(merged).append("\t");
                     }
@@ -88,18 +191,17 @@ public class ExportService {
                 
                 // Если stringID отсутствует, добавляем его из record.getId() в начало
                 if (!hasStringIdField) {
-                    builder.append("stringID=").append(record.getId()).append("\t");
+                    writer.append("stringID=").append(record.getId()).append("\t");
                 }
                 
-                builder.append(fieldsBuilder);
-                builder.append("string_end\n");
+                writer.append(fieldsBuilder);
+                writer.write("string_end");
+                separator = "\n";
             } else {
                 // Многострочный формат item_name блока
-                builder.append("item_name_begin\n");
-                boolean hasIdField = record.getFields().stream()
-                    .anyMatch(field -> "id".equalsIgnoreCase(field.getKey()));
-                if (!hasIdField) {
-                    builder.append("    id=").append(record.getId()).append("\n");
+                writer.write("item_name_begin\n");
+                if (roles.id() == null) {
+                    writer.append("    id=").append(record.getId()).append("\n");
                 }
                 for (DatField field : record.getFields()) {
                     if (field.isDeleted()) {
@@ -109,63 +211,99 @@ public class ExportService {
                     if (merged == null) {
                         continue;
                     }
-                    builder.append("    ").append(field.getKey())
+                    writer.append("    ").append(field.getKey())
                         .append("=").append(merged).append("\n");
                 }
-                builder.append("item_name_end\n\n");
+                writer.write("item_name_end");
+                separator = "\n\n";
             }
         }
-        return builder.toString().trim();
+        return separator;
     }
 
-    private String exportConfig(List<DatRecord> records) {
-        StringBuilder builder = new StringBuilder();
-        LinkedHashMap<String, List<String>> sections = new LinkedHashMap<>();
-
-        for (DatRecord record : records) {
-            if (record.isDeleted()) {
-                continue;
+    /**
+     * Строки CONFIG группируются по секциям в порядке первого появления. Чтобы не держать
+     * строки в памяти, первый проход запоминает только номера записей каждой секции.
+     * Из них собирается план вывода: заголовок секции, затем номера ее записей. Рендер
+     * идет по диапазонам плана, как по записям в BLOCK и LINE.
+     */
+    private ConfigRenderer configRenderer(List<DatRecord> records) {
+        LinkedHashMap<String, List<Integer>> sections = new LinkedHashMap<>();
+        if (parallel && records.size() > chunkRecords) {
+            List<ForkJoinTask<LinkedHashMap<String, List<Integer>>>> tasks = new ArrayList<>();
+            for (int from = 0; from < records.size(); from += chunkRecords) {
+                int start = from;
+                int end = Math.min(from + chunkRecords, records.size());
+                tasks.add(parsePool.submit(() -> configSections(records, start, end)));
+            }
+            try {
+                for (ForkJoinTask<LinkedHashMap<String, List<Integer>>> task : tasks) {
+                    task.join().forEach((section, indices) ->
+                        sections.computeIfAbsent(section, s -> new ArrayList<>()).addAll(indices));
+                }
+            } finally {
+                tasks.forEach(task -> task.cancel(false));
             }
-            DatField sectionField = findField(record, "section");
-            DatField keyField = findField(record, "key");
-            DatField valueField = findField(record, "value");
+        } else {
+            sections.putAll(configSections(records, 0, records.size()));
+        }
 
-            String section = resolveFieldValue(sectionField);
-            if (section == null || section.isEmpty()) {
-                section = "DEFAULT";
+        List<String> names = new ArrayList<>(sections.keySet());
+        int planSize = names.size();
+        for (List<Integer> indices : sections.values()) {
+            planSize += indices.size();
+        }
+        int[] plan = new int[planSize];
+        int position = 0;
+        for (int section = 0; section < names.size(); section++) {
+            plan[position++] = HEADER_ENTRY + section;
+            for (int index : sections.get(names.get(section))) {
+                plan[position++] = index;
             }
-            String key = resolveFieldValue(keyField);
-            if (key == null || key.isEmpty() || valueField == null) {
+        }
+        return new ConfigRenderer(records, names, plan);
+    }
+
+    private LinkedHashMap<String, List<Integer>> configSections(List<DatRecord> records, int from, int to) {
+        LinkedHashMap<String, List<Integer>> sections = new LinkedHashMap<>();
+        for (int index = from; index < to; index++) {
+            FieldRoles roles = configLine(records.get(index));
+            if (roles == null) {
                 continue;
             }
-            String mergedValue = mergeService.resolveMergedValue(valueField);
-            if (mergedValue == null) {
-                continue;
+            String section = resolveFieldValue(roles.section());
+            if (section == null || section.isEmpty()) {
+                section = "DEFAULT";
             }
-
-            sections.computeIfAbsent(section, s -> new ArrayList<>())
-                .add(key + "=" + mergedValue);
+            sections.computeIfAbsent(section, s -> new ArrayList<>()).add(index);
         }
-
-        sections.forEach((section, lines) -> {
-            builder.append("[").append(section).append("]\n");
-            for (String line : lines) {
-                builder.append(line).append("\n");
-            }
-            builder.append("\n");
-        });
-
-        return builder.toString().trim();
+        return sections;
     }
 
-    private DatField findField(DatRecord record, String fieldName) {
-        if (record == null || record.getFields() == null) {
+    /**
+     * Поля развернутой записи, если она дает строку CONFIG (есть ключ и значение), иначе {@code null}.
+     */
+    private FieldRoles configLine(DatRecord source) {
+        if (source.isDeleted()) {
+            return null;
+        }
+        FieldRoles roles = FieldRoles.of(mergeService.expanded(source));
+        String key = resolveFieldValue(roles.key());
+        if (key == null || key.isEmpty() || roles.value() == null) {
             return null;
         }
-        return record.getFields().stream()
-            .filter(field -> fieldName.equalsIgnoreCase(field.getKey()))
-            .findFirst()
-            .orElse(null);
+        return mergeService.resolveMergedValue(roles.value()) != null ? roles : null;
+    }
+
+    /**
+     * Конец файла как у {@link String#trim()}: отбрасывает завершающие символы не больше пробела.
+     */
+    private static String trimTrailing(String value) {
+        int end = value.length();
+        while (end > 0 && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return value.substring(0, end);
     }
 
     private String resolveFieldValue(DatField field) {
@@ -183,5 +321,90 @@ public class ExportService {
         }
         return null;
     }
-}
 
+    /**
+     * Поля записи, которые экспорт ищет по имени (без учета регистра), найденные за один
+     * проход по полям. Для каждого имени берется первое поле. Имена различаются длиной,
+     * поэтому поле сравнивается не больше чем с одним именем. {@code value} - значение
+     * строки CONFIG и предпочтительное поле строки LINE.
+     */
+    private record FieldRoles(DatField value, DatField stringId, DatField id, DatField section, DatField key) {
+
+        static FieldRoles of(DatRecord record) {
+            DatField value = null;
+            DatField stringId = null;
+            DatField id = null;
+            DatField section = null;
+            DatField key = null;
+            List<DatField> fields = record.getFields() != null ? record.getFields() : List.of();
+            for (DatField field : fields) {
+                String name = field.getKey();
+                if (name == null) {
+                    continue;
+                }
+                switch (name.length()) {
+                    case 2 -> id = id == null && "id".equalsIgnoreCase(name) ? field : id;
+                    case 3 -> key = key == null && "key".equalsIgnoreCase(name) ? field : key;
+                    case 5 -> value = value == null && "value".equalsIgnoreCase(name) ? field : value;
+                    case 7 -> section = section == null && "section".equalsIgnoreCase(name) ? field : section;
+                    case 8 -> stringId = stringId == null && "stringid".equalsIgnoreCase(name) ? field : stringId;
+                    default -> {
+                    }
+                }
+            }
+            return new FieldRoles(value, stringId, id, section, key);
+        }
+    }
+
+    /**
+     * Рендерит диапазон [from, to) и возвращает разделитель, который нужен перед выводом
+     * следующего диапазона, если этот диапазон что-то написал.
+     */
+    @FunctionalInterface
+    private interface ChunkRenderer {
+        String render(int from, int to, Writer writer) throws IOException;
+    }
+
+    private record RenderedChunk(ByteArrayOutputStream bytes, String separator) {
+    }
+
+    /**
+     * Пишет диапазон плана CONFIG. Разделители входят в сам диапазон: перед заголовком
+     * секции (кроме первого) пустая строка, перед строкой значения перевод строки.
+     */
+    private final class ConfigRenderer implements ChunkRenderer {
+        private final List<DatRecord> records;
+        private final List<String> sections;
+        private final int[] plan;
+
+        ConfigRenderer(List<DatRecord> records, List<String> sections, int[] plan) {
+            this.records = records;
+            this.sections = sections;
+            this.plan = plan;
+        }
+
+        int size() {
+            return plan.length;
+        }
+
+        @Override
+        public String render(int from, int to, Writer writer) throws IOException {
+            for (int position = from; position < to; position++) {
+                int entry = plan[position];
+                if (entry < 0) {
+                    if (position > 0) {
+                        writer.write("\n\n");
+                    }
+                    writer.append("[").append(sections.get(entry - HEADER_ENTRY)).append("]");
+                    continue;
+                }
+                FieldRoles roles = FieldRoles.of(mergeService.expanded(records.get(entry)));
+                String key = resolveFieldValue(roles.key());
+                String mergedValue = mergeService.resolveMergedValue(roles.value());
+                boolean last = position == plan.length - 1;
+                writer.append("\n").append(key).append("=").append(last ? trimTrailing(mergedValue) : mergedValue);
+            }
+            return "";
+        }
+    }
+}
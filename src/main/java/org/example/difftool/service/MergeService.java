@@ -2,8 +2,15 @@ package org.example.difftool.service;
 
 import org.example.difftool.model.DatField;
 import org.example.difftool.model.DatRecord;
+import org.example.difftool.model.FieldDecision;
+import org.example.difftool.model.MergeOperation;
+import org.example.difftool.model.RecordDecision;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 @Service
@@ -33,15 +40,242 @@ public class MergeService {
     }
 
     public void deleteRecord(DatRecord record) {
+        expandRecord(record);
         record.setDeleted(true);
         record.getFields().forEach(f -> f.setDeleted(true));
     }
 
     public void restoreRecord(DatRecord record) {
+        expandRecord(record);
         record.setDeleted(false);
         record.getFields().forEach(f -> f.setDeleted(false));
     }
 
+    /**
+     * Разворачивает компактную запись без изменений в обычный список полей со статусом "same".
+     * Для обычных записей ничего не делает.
+     */
+    public void expandRecord(DatRecord record) {
+        if (record.getValues() == null) {
+            return;
+        }
+        record.setFields(expandValues(record.getValues(), record.isDeleted()));
+        record.setValues(null);
+        record.setSame(false);
+    }
+
+    /**
+     * Развернутая копия компактной записи; обычная запись возвращается как есть.
+     * В отличие от {@link #expandRecord(DatRecord)} исходную запись не меняет.
+     */
+    public DatRecord expanded(DatRecord record) {
+        if (record.getValues() == null) {
+            return record;
+        }
+        DatRecord copy = new DatRecord(record.getId(), expandValues(record.getValues(), record.isDeleted()));
+        copy.setDeleted(record.isDeleted());
+        return copy;
+    }
+
+    /**
+     * Накладывает записи клиента на полный diff: записи с тем же id заменяются,
+     * порядок полного diff сохраняется, неизвестные id добавляются в конец.
+     */
+    public List<DatRecord> overlay(List<DatRecord> base, List<DatRecord> edited) {
+        Map<String, DatRecord> editedById = new HashMap<>(edited.size() * 2);
+        for (DatRecord record : edited) {
+            editedById.put(record.getId(), record);
+        }
+        List<DatRecord> result = new ArrayList<>(base.size());
+        for (DatRecord record : base) {
+            DatRecord replacement = editedById.remove(record.getId());
+            result.add(replacement != null ? replacement : record);
+        }
+        for (DatRecord record : edited) {
+            if (editedById.remove(record.getId()) != null) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Применяет решения клиента к записям сессии. Записи с решениями копируются,
+     * исходный список и его записи не изменяются. Решения для неизвестных id и полей игнорируются.
+     */
+    public List<DatRecord> applyDecisions(List<DatRecord> base, List<RecordDecision> decisions) {
+        Map<String, RecordDecision> decisionsById = new HashMap<>(decisions.size() * 2);
+        for (RecordDecision decision : decisions) {
+            decisionsById.put(decision.getId(), decision);
+        }
+        List<DatRecord> result = new ArrayList<>(base.size());
+        for (DatRecord record : base) {
+            RecordDecision decision = decisionsById.get(record.getId());
+            result.add(decision != null ? applyDecision(record, decision) : record);
+        }
+        return result;
+    }
+
+    /**
+     * Применяет пакет операций к сессии атомарно: если одна операция некорректна,
+     * не применяется ни одна.
+     *
+     * @return версия сессии после применения
+     * @throws IllegalArgumentException при неизвестной операции или неверном индексе
+     */
+    public long applyOperations(DiffSessionStore.DiffSession session, List<MergeOperation> operations) {
+        synchronized (session) {
+            Map<Integer, DatRecord> working = new HashMap<>();
+            for (MergeOperation operation : operations) {
+                int index = resolveRecordIndex(session, operation);
+                DatRecord record = working.computeIfAbsent(index, i -> copyRecord(session.getRecord(i)));
+                applyOperation(record, operation);
+            }
+            return session.replaceRecords(working);
+        }
+    }
+
+    /**
+     * Применяет copyOld, copyNew или reset к полям сессии, заданным упакованными индексами
+     * (см. {@link ChangeGroups#recordOf}, {@link ChangeGroups#fieldOf}), одним пакетом.
+     * Каждая затронутая запись копируется один раз.
+     *
+     * @return версия сессии после применения
+     * @throws IllegalArgumentException при другой операции
+     */
+    public long applyToFields(DiffSessionStore.DiffSession session, long[] fields, String op) {
+        if (!"copyOld".equals(op) && !"copyNew".equals(op) && !"reset".equals(op)) {
+            throw new IllegalArgumentException("Неподдерживаемая операция массового слияния: " + op);
+        }
+        synchronized (session) {
+            Map<Integer, DatRecord> working = new HashMap<>();
+            DatRecord record = null;
+            int recordIndex = -1;
+            for (long packed : fields) {
+                if (ChangeGroups.recordOf(packed) != recordIndex) {
+                    recordIndex = ChangeGroups.recordOf(packed);
+                    record = working.computeIfAbsent(recordIndex, i -> copyRecord(session.getRecord(i)));
+                }
+                applyFieldOperation(record.getFields().get(ChangeGroups.fieldOf(packed)), op, null);
+            }
+            return session.replaceRecords(working);
+        }
+    }
+
+    private int resolveRecordIndex(DiffSessionStore.DiffSession session, MergeOperation operation) {
+        if (operation.getRecord() == null) {
+            if (operation.getId() == null) {
+                throw new IllegalArgumentException("Не задана запись операции " + operation.getOp());
+            }
+            int index = session.indexOf(operation.getId());
+            if (index < 0) {
+                throw new IllegalArgumentException("Запись не найдена: " + operation.getId());
+            }
+            return index;
+        }
+        int index = operation.getRecord();
+        if (index < 0 || index >= session.size()) {
+            throw new IllegalArgumentException("Неверный индекс записи: " + index);
+        }
+        if (operation.getId() != null && !operation.getId().equals(session.getRecord(index).getId())) {
+            throw new IllegalArgumentException("Индекс " + index + " не соответствует записи " + operation.getId());
+        }
+        return index;
+    }
+
+    private void applyOperation(DatRecord record, MergeOperation operation) {
+        String op = operation.getOp() != null ? operation.getOp() : "";
+        switch (op) {
+            case "deleteRecord" -> deleteRecord(record);
+            case "restoreRecord" -> restoreRecord(record);
+            case "copyOld", "copyNew", "reset" -> {
+                if (operation.getField() == null) {
+                    record.getFields().forEach(field -> applyFieldOperation(field, op, operation));
+                    record.setDeleted(false);
+                } else {
+                    applyFieldOperation(resolveField(record, operation), op, operation);
+                }
+            }
+            case "setMerged", "deleteField", "restoreField" ->
+                applyFieldOperation(resolveField(record, operation), op, operation);
+            default -> throw new IllegalArgumentException("Неизвестная операция: " + op);
+        }
+    }
+
+    private void applyFieldOperation(DatField field, String op, MergeOperation operation) {
+        switch (op) {
+            case "copyOld" -> copyOldToMerged(field);
+            case "copyNew" -> copyNewToMerged(field);
+            case "reset" -> resetMerged(field);
+            case "setMerged" -> {
+                field.setMergedValue(operation.getValue());
+                field.setDeleted(false);
+            }
+            case "deleteField" -> deleteField(field);
+            case "restoreField" -> restoreField(field);
+            default -> throw new IllegalArgumentException("Неизвестная операция: " + op);
+        }
+    }
+
+    private DatField resolveField(DatRecord record, MergeOperation operation) {
+        Integer index = operation.getField();
+        if (index == null || index < 0 || index >= record.getFields().size()) {
+            throw new IllegalArgumentException("Неверный индекс поля " + index + " в записи " + record.getId());
+        }
+        return record.getFields().get(index);
+    }
+
+    private DatRecord applyDecision(DatRecord source, RecordDecision decision) {
+        DatRecord record = copyRecord(source);
+        if (decision.getFields() != null) {
+            for (FieldDecision fieldDecision : decision.getFields()) {
+                for (DatField field : record.getFields()) {
+                    if (!field.getKey().equals(fieldDecision.getKey())) {
+                        continue;
+                    }
+                    if (fieldDecision.getMergedValue() != null) {
+                        field.setMergedValue(fieldDecision.getMergedValue());
+                    }
+                    if (fieldDecision.getDeleted() != null) {
+                        field.setDeleted(fieldDecision.getDeleted());
+                    }
+                }
+            }
+        }
+        if (decision.getDeleted() != null) {
+            record.setDeleted(decision.getDeleted());
+        }
+        return record;
+    }
+
+    private DatRecord copyRecord(DatRecord source) {
+        DatRecord expanded = expanded(source);
+        if (expanded != source) {
+            return expanded;
+        }
+        List<DatField> fields = new ArrayList<>(source.getFields().size());
+        for (DatField field : source.getFields()) {
+            DatField copy = new DatField(field.getKey(), field.getOldValue(), field.getNewValue(),
+                                         field.getMergedValue(), field.getStatus());
+            copy.setDeleted(field.isDeleted());
+            fields.add(copy);
+        }
+        DatRecord copy = new DatRecord(source.getId(), fields);
+        copy.setDeleted(source.isDeleted());
+        return copy;
+    }
+
+    private List<DatField> expandValues(List<String> values, boolean deleted) {
+        List<DatField> fields = new ArrayList<>(values.size() / 2);
+        for (int i = 0; i + 1 < values.size(); i += 2) {
+            String value = values.get(i + 1);
+            DatField field = new DatField(values.get(i), value, value, value, "same");
+            field.setDeleted(deleted);
+            fields.add(field);
+        }
+        return fields;
+    }
+
     public String resolveMergedValue(DatField field) {
         if (field.isDeleted()) {
             return null;
@@ -0,0 +1,309 @@
+package org.example.difftool.service;
+
+import java.util.*;
+
+/**
+ * Колоночное хранилище распарсенных записей.
+ * <p>
+ * Вместо {@code LinkedHashMap} на каждую запись таблица держит схему (список имен полей),
+ * по массиву значений на каждую колонку и индекс id → номер строки. Порядок полей
+ * конкретной записи хранится как ссылка на общий "layout" (последовательность колонок),
+ * поэтому записи с одинаковым набором и порядком полей делят один массив.
+ * <p>
+ * Семантика совпадает с прежней {@code Map<String, LinkedHashMap<String, String>>}:
+ * записи идут в порядке первого появления id, при повторе id запись занимает прежнюю
+ * позицию, а поля берутся из последнего вхождения. Значения {@code null} не хранятся:
+ * отсутствие значения в колонке означает отсутствие поля в записи.
+ * <p>
+ * Заполнение не потокобезопасно; готовую таблицу можно читать из нескольких потоков.
+ */
+public class RecordTable {
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int[] EMPTY_LAYOUT = new int[0];
+
+    private final List<String> columns = new ArrayList<>();
+    private final Map<String, Integer> columnIndex = new HashMap<>();
+    private String[][] values = new String[0][];
+
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private int[] rowLayouts = new int[INITIAL_CAPACITY];
+    private long[] fingerprints = new long[INITIAL_CAPACITY];
+    private final Map<String, Integer> rowById = new HashMap<>();
+    private int rowCount;
+
+    private final List<int[]> layouts = new ArrayList<>();
+    private final Map<LayoutKey, Integer> layoutIds = new HashMap<>();
+    private int lastLayoutId = -1;
+
+    /**
+     * Начинает сборку новой записи. Экземпляр {@link RowBuilder} можно переиспользовать.
+     */
+    public RowBuilder newRow() {
+        return new RowBuilder();
+    }
+
+    public int size() {
+        return rowCount;
+    }
+
+    public boolean isEmpty() {
+        return rowCount == 0;
+    }
+
+    public boolean containsId(String id) {
+        return rowById.containsKey(id);
+    }
+
+    /**
+     * @return номер строки для id или -1
+     */
+    public int rowOf(String id) {
+        Integer row = rowById.get(id);
+        return row != null ? row : -1;
+    }
+
+    public String id(int row) {
+        return ids[row];
+    }
+
+    /**
+     * Колонки записи в порядке полей исходного файла.
+     */
+    public int[] layout(int row) {
+        return layouts.get(rowLayouts[row]);
+    }
+
+    /**
+     * 64-битный отпечаток содержимого записи: не зависит от порядка полей и номеров колонок,
+     * поэтому сравним между разными таблицами. Разные отпечатки гарантируют различие записей.
+     */
+    public long fingerprint(int row) {
+        return fingerprints[row];
+    }
+
+    public int layoutId(int row) {
+        return rowLayouts[row];
+    }
+
+    public int columnCount() {
+        return columns.size();
+    }
+
+    public String columnKey(int column) {
+        return columns.get(column);
+    }
+
+    /**
+     * @return номер колонки для имени поля или -1
+     */
+    public int columnOf(String key) {
+        Integer column = columnIndex.get(key);
+        return column != null ? column : -1;
+    }
+
+    public String value(int column, int row) {
+        return values[column][row];
+    }
+
+    /**
+     * Значение поля записи по имени или {@code null}, если поля нет.
+     */
+    public String value(int row, String key) {
+        int column = columnOf(key);
+        return column >= 0 ? values[column][row] : null;
+    }
+
+    /**
+     * Копия записи в виде упорядоченной карты (для отладки и совместимости).
+     */
+    public LinkedHashMap<String, String> toMap(int row) {
+        LinkedHashMap<String, String> map = new LinkedHashMap<>();
+        for (int column : layout(row)) {
+            map.put(columns.get(column), values[column][row]);
+        }
+        return map;
+    }
+
+    /**
+     * Добавляет все записи другой таблицы по правилам {@link RowBuilder#commit(String)}.
+     */
+    public void appendAll(RecordTable other) {
+        int[] columnMap = new int[other.columnCount()];
+        for (int column = 0; column < columnMap.length; column++) {
+            columnMap[column] = columnFor(other.columnKey(column));
+        }
+        RowBuilder builder = newRow();
+        for (int row = 0; row < other.rowCount; row++) {
+            for (int column : other.layout(row)) {
+                builder.putColumn(columnMap[column], other.values[column][row]);
+            }
+            builder.commit(other.ids[row]);
+        }
+    }
+
+    /**
+     * Обрезает внутренние массивы до фактического числа строк.
+     */
+    public void trimToSize() {
+        if (ids.length == rowCount) {
+            return;
+        }
+        ids = Arrays.copyOf(ids, rowCount);
+        rowLayouts = Arrays.copyOf(rowLayouts, rowCount);
+        fingerprints = Arrays.copyOf(fingerprints, rowCount);
+        for (int column = 0; column < values.length; column++) {
+            values[column] = Arrays.copyOf(values[column], rowCount);
+        }
+    }
+
+    private int columnFor(String key) {
+        Integer column = columnIndex.get(key);
+        if (column != null) {
+            return column;
+        }
+        int created = columns.size();
+        columns.add(key);
+        columnIndex.put(key, created);
+        values = Arrays.copyOf(values, created + 1);
+        values[created] = new String[ids.length];
+        return created;
+    }
+
+    private int layoutFor(int[] columnsInOrder, int length) {
+        if (lastLayoutId >= 0) {
+            int[] last = layouts.get(lastLayoutId);
+            if (Arrays.equals(last, 0, last.length, columnsInOrder, 0, length)) {
+                return lastLayoutId;
+            }
+        }
+        int[] layout = length == 0 ? EMPTY_LAYOUT : Arrays.copyOf(columnsInOrder, length);
+        Integer existing = layoutIds.get(new LayoutKey(layout));
+        if (existing == null) {
+            existing = layouts.size();
+            layouts.add(layout);
+            layoutIds.put(new LayoutKey(layout), existing);
+        }
+        lastLayoutId = existing;
+        return existing;
+    }
+
+    /**
+     * Хеш пары ключ-значение; отпечаток записи - сумма хешей полей (порядок полей не важен).
+     */
+    private static long fieldHash(String key, String value) {
+        long hash = ((long) key.hashCode() << 32) ^ (value.hashCode() & 0xFFFFFFFFL);
+        hash ^= (long) value.length() * 0x9E3779B97F4A7C15L;
+        // Финализатор SplitMix64
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+
+    private void ensureRowCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(required, ids.length * 2);
+        ids = Arrays.copyOf(ids, capacity);
+        rowLayouts = Arrays.copyOf(rowLayouts, capacity);
+        fingerprints = Arrays.copyOf(fingerprints, capacity);
+        for (int column = 0; column < values.length; column++) {
+            values[column] = Arrays.copyOf(values[column], capacity);
+        }
+    }
+
+    /**
+     * Накопитель полей одной записи.
+     */
+    public final class RowBuilder {
+        private int[] rowColumns = new int[16];
+        private String[] rowValues = new String[16];
+        private int fieldCount;
+
+        /**
+         * Добавляет поле; повторное имя заменяет значение, сохраняя позицию (как {@code LinkedHashMap.put}).
+         */
+        public RowBuilder put(String key, String value) {
+            return putColumn(columnFor(key), value);
+        }
+
+        private RowBuilder putColumn(int column, String value) {
+            for (int i = 0; i < fieldCount; i++) {
+                if (rowColumns[i] == column) {
+                    rowValues[i] = value;
+                    return this;
+                }
+            }
+            if (fieldCount == rowColumns.length) {
+                rowColumns = Arrays.copyOf(rowColumns, fieldCount * 2);
+                rowValues = Arrays.copyOf(rowValues, fieldCount * 2);
+            }
+            rowColumns[fieldCount] = column;
+            rowValues[fieldCount] = value;
+            fieldCount++;
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return fieldCount == 0;
+        }
+
+        public int fieldCount() {
+            return fieldCount;
+        }
+
+        public List<String> keys() {
+            List<String> keys = new ArrayList<>(fieldCount);
+            for (int i = 0; i < fieldCount; i++) {
+                keys.add(columns.get(rowColumns[i]));
+            }
+            return keys;
+        }
+
+        /**
+         * Сохраняет запись под указанным id и очищает накопитель.
+         * Если id уже есть, запись заменяется целиком на прежней позиции.
+         */
+        public void commit(String id) {
+            Integer existing = rowById.get(id);
+            int row;
+            if (existing != null) {
+                row = existing;
+                for (int column : layout(row)) {
+                    values[column][row] = null;
+                }
+            } else {
+                row = rowCount++;
+                ensureRowCapacity(rowCount);
+                ids[row] = id;
+                rowById.put(id, row);
+            }
+            long fingerprint = fieldCount;
+            for (int i = 0; i < fieldCount; i++) {
+                values[rowColumns[i]][row] = rowValues[i];
+                fingerprint += fieldHash(columns.get(rowColumns[i]), rowValues[i]);
+            }
+            rowLayouts[row] = layoutFor(rowColumns, fieldCount);
+            fingerprints[row] = fingerprint;
+            clear();
+        }
+
+        public void clear() {
+            Arrays.fill(rowValues, 0, fieldCount, null);
+            fieldCount = 0;
+        }
+    }
+
+    private record LayoutKey(int[] columns) {
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof LayoutKey key && Arrays.equals(columns, key.columns);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(columns);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.example.difftool.service;
+
+import org.example.difftool.model.DatField;
+import org.example.difftool.model.DatRecord;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Поисковый индекс по записям diff: отсортированный массив id для поиска по префиксу
+ * и инвертированный индекс триграмм по id, именам полей и значениям OLD/NEW.
+ * <p>
+ * Индекс дает только кандидатов: запись, содержащая подстроку, обязательно попадает
+ * в кандидаты, но каждого кандидата нужно проверить по самой записи. Текст индексируется
+ * в нижнем регистре ({@link Locale#ROOT}), поэтому поиск регистронезависимый.
+ * После построения индекс неизменяем и может читаться из нескольких потоков.
+ */
+public final class SearchIndex {
+
+    private final int size;
+    private final String[] sortedIds;
+    private final int[] idOrder;
+    private final Map<Long, int[]> postings;
+    private final long estimatedBytes;
+
+    private SearchIndex(int size, String[] sortedIds, int[] idOrder, Map<Long, int[]> postings, long estimatedBytes) {
+        this.size = size;
+        this.sortedIds = sortedIds;
+        this.idOrder = idOrder;
+        this.postings = postings;
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    public static SearchIndex build(List<DatRecord> records) {
+        int size = records.size();
+        Integer[] order = new Integer[size];
+        String[] lowerIds = new String[size];
+        Map<Long, PostingList> builders = new HashMap<>();
+        Set<Long> recordTrigrams = new HashSet<>();
+
+        for (int index = 0; index < size; index++) {
+            DatRecord record = records.get(index);
+            order[index] = index;
+            lowerIds[index] = lower(record.getId());
+
+            recordTrigrams.clear();
+            addTrigrams(lowerIds[index], recordTrigrams);
+            if (record.getValues() != null) {
+                for (String value : record.getValues()) {
+                    addTrigrams(lower(value), recordTrigrams);
+                }
+            } else {
+                for (DatField field : record.getFields()) {
+                    addTrigrams(lower(field.getKey()), recordTrigrams);
+                    addTrigrams(lower(field.getOldValue()), recordTrigrams);
+                    addTrigrams(lower(field.getNewValue()), recordTrigrams);
+                }
+            }
+            for (Long trigram : recordTrigrams) {
+                builders.computeIfAbsent(trigram, t -> new PostingList()).add(index);
+            }
+        }
+
+        Arrays.sort(order, (left, right) -> lowerIds[left].compareTo(lowerIds[right]));
+        String[] sortedIds = new String[size];
+        int[] idOrder = new int[size];
+        long bytes = 64L + size * 8L;
+        for (int i = 0; i < size; i++) {
+            idOrder[i] = order[i];
+            sortedIds[i] = lowerIds[order[i]];
+            if (lowerIds[i] != records.get(i).getId()) {
+                bytes += 40L + lowerIds[i].length();
+            }
+        }
+
+        Map<Long, int[]> postings = new HashMap<>(builders.size() * 2);
+        for (Map.Entry<Long, PostingList> entry : builders.entrySet()) {
+            int[] list = entry.getValue().toArray();
+            postings.put(entry.getKey(), list);
+            bytes += 88L + list.length * 4L;
+        }
+        return new SearchIndex(size, sortedIds, idOrder, postings, bytes);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Грубая оценка памяти индекса: массивы id, списки триграмм и узлы карты.
+     */
+    public long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Индексы записей (по возрастанию), которые могут содержать подстроку {@code lowerTerm}.
+     *
+     * @return {@code null}, если подстрока короче трех символов и индекс не сужает поиск
+     */
+    public int[] candidates(String lowerTerm) {
+        if (lowerTerm.length() < 3) {
+            return null;
+        }
+        int[] rarest = null;
+        for (int i = 0; i + 3 <= lowerTerm.length(); i++) {
+            int[] list = postings.get(trigram(lowerTerm, i));
+            if (list == null) {
+                return new int[0];
+            }
+            if (rarest == null || list.length < rarest.length) {
+                rarest = list;
+            }
+        }
+        return rarest;
+    }
+
+    /**
+     * Индексы записей, id которых начинается с {@code lowerPrefix}, в порядке сортировки id.
+     */
+    public int[] idPrefix(String lowerPrefix) {
+        int from = lowerBound(lowerPrefix);
+        int to = from;
+        while (to < size && sortedIds[to].startsWith(lowerPrefix)) {
+            to++;
+        }
+        return Arrays.copyOfRange(idOrder, from, to);
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedIds[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    static String lower(String value) {
+        return value != null ? value.toLowerCase(Locale.ROOT) : null;
+    }
+
+    private static void addTrigrams(String text, Set<Long> target) {
+        if (text == null) {
+            return;
+        }
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            target.add(trigram(text, i));
+        }
+    }
+
+    private static long trigram(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+
+    private static final class PostingList {
+        private int[] items = new int[4];
+        private int count;
+
+        void add(int index) {
+            if (count == items.length) {
+                items = Arrays.copyOf(items, count * 2);
+            }
+            items[count++] = index;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(items, count);
+        }
+    }
+}
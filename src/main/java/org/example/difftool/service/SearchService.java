@@ -0,0 +1,204 @@
+package org.example.difftool.service;
+
+import org.example.difftool.model.DatField;
+import org.example.difftool.model.DatRecord;
+import org.example.difftool.model.SearchHit;
+import org.example.difftool.model.SearchResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Поиск по записям сессии diff через {@link SearchIndex}.
+ * <p>
+ * Запрос - термы через пробел, запись должна подходить под все термы:
+ * <ul>
+ *     <li>{@code sword} - подстрока в id, имени поля или значении (OLD, NEW, итоговом);</li>
+ *     <li>{@code name:sword} - подстрока в значении поля {@code name};</li>
+ *     <li>{@code id:12} - id начинается с {@code 12}.</li>
+ * </ul>
+ * Индекс строится при первом поиске по сессии и покрывает OLD/NEW значения; записи, измененные
+ * операциями слияния, всегда проверяются напрямую, поэтому итоговые значения тоже находятся.
+ */
+@Service
+public class SearchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchService.class);
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 100_000;
+
+    public SearchResult search(DiffSessionStore.DiffSession session, String query, int limit) {
+        long started = System.nanoTime();
+        int safeLimit = limit <= 0 ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+        List<Term> terms = parse(query);
+        if (terms.isEmpty()) {
+            return new SearchResult(query, 0, 0, List.of());
+        }
+
+        SearchIndex index = session.searchIndex();
+        int[] modified = session.modifiedIndices();
+        int[] candidates = null;
+        for (Term term : terms) {
+            int[] termCandidates = term.candidates(index, modified);
+            if (termCandidates != null && (candidates == null || termCandidates.length < candidates.length)) {
+                candidates = termCandidates;
+            }
+        }
+
+        List<SearchHit> hits = new ArrayList<>();
+        int count = candidates != null ? candidates.length : session.size();
+        for (int i = 0; i < count; i++) {
+            int recordIndex = candidates != null ? candidates[i] : i;
+            DatRecord record = session.getRecord(recordIndex);
+            int score = 0;
+            for (Term term : terms) {
+                int termScore = term.score(record);
+                if (termScore == 0) {
+                    score = 0;
+                    break;
+                }
+                score += termScore;
+            }
+            if (score > 0) {
+                hits.add(new SearchHit(recordIndex, record.getId(), score));
+            }
+        }
+
+        hits.sort(Comparator.comparingInt(SearchHit::getScore).reversed().thenComparingInt(SearchHit::getIndex));
+        int total = hits.size();
+        List<SearchHit> page = total > safeLimit ? new ArrayList<>(hits.subList(0, safeLimit)) : hits;
+        long tookMs = (System.nanoTime() - started) / 1_000_000;
+        logger.debug("Поиск '{}': кандидатов={}, найдено={}, {} мс", query, count, total, tookMs);
+        return new SearchResult(query, total, tookMs, page);
+    }
+
+    /**
+     * Индексы записей (по возрастанию), которые могут содержать подстроку; {@code null} - проверять все.
+     */
+    public int[] candidates(DiffSessionStore.DiffSession session, String lowerNeedle) {
+        return withModified(session.searchIndex().candidates(lowerNeedle), session.modifiedIndices());
+    }
+
+    /**
+     * Подстрока (в нижнем регистре) в id, имени поля, OLD, NEW или итоговом значении.
+     */
+    public boolean matches(DatRecord record, String lowerNeedle) {
+        return new Term(null, lowerNeedle).score(record) > 0;
+    }
+
+    private List<Term> parse(String query) {
+        List<Term> terms = new ArrayList<>();
+        if (query == null) {
+            return terms;
+        }
+        for (String token : query.trim().split("\\s+")) {
+            String lowerToken = SearchIndex.lower(token);
+            if (lowerToken.isEmpty()) {
+                continue;
+            }
+            int separator = lowerToken.indexOf(':');
+            if (separator > 0 && separator < lowerToken.length() - 1) {
+                terms.add(new Term(lowerToken.substring(0, separator), lowerToken.substring(separator + 1)));
+            } else {
+                terms.add(new Term(null, lowerToken));
+            }
+        }
+        return terms;
+    }
+
+    private static int[] withModified(int[] candidates, int[] modified) {
+        if (candidates == null || modified.length == 0) {
+            return candidates;
+        }
+        int[] merged = new int[candidates.length + modified.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < candidates.length || j < modified.length) {
+            int next;
+            if (j >= modified.length || (i < candidates.length && candidates[i] <= modified[j])) {
+                next = candidates[i++];
+            } else {
+                next = modified[j++];
+            }
+            if (count == 0 || merged[count - 1] != next) {
+                merged[count++] = next;
+            }
+        }
+        return Arrays.copyOf(merged, count);
+    }
+
+    /**
+     * Терм запроса: {@code field == null} - поиск везде, "id" - префикс id, иначе значение поля.
+     */
+    private record Term(String field, String value) {
+
+        int[] candidates(SearchIndex index, int[] modified) {
+            if ("id".equals(field)) {
+                int[] matches = index.idPrefix(value);
+                Arrays.sort(matches);
+                return matches;
+            }
+            int[] byValue = index.candidates(value);
+            if (byValue == null && field != null) {
+                // Короткое значение: сужаем хотя бы по имени поля
+                byValue = index.candidates(field);
+            }
+            return withModified(byValue, modified);
+        }
+
+        int score(DatRecord record) {
+            String id = SearchIndex.lower(record.getId());
+            if ("id".equals(field)) {
+                return id.equals(value) ? 100 : id.startsWith(value) ? 40 : 0;
+            }
+            int best = 0;
+            if (field == null) {
+                best = id.equals(value) ? 100 : id.startsWith(value) ? 40 : id.contains(value) ? 20 : 0;
+            }
+            if (record.getValues() != null) {
+                List<String> values = record.getValues();
+                for (int i = 0; i + 1 < values.size(); i += 2) {
+                    best = Math.max(best, fieldScore(values.get(i), values.get(i + 1), null, null));
+                }
+            } else {
+                for (DatField recordField : record.getFields()) {
+                    best = Math.max(best, fieldScore(recordField.getKey(), recordField.getOldValue(),
+                                                     recordField.getNewValue(), recordField.getMergedValue()));
+                }
+            }
+            return best;
+        }
+
+        private int fieldScore(String key, String first, String second, String third) {
+            String lowerKey = SearchIndex.lower(key);
+            if (field != null && !field.equals(lowerKey)) {
+                return 0;
+            }
+            int scoped = field != null ? 2 : 1;
+            int best = 0;
+            for (String candidate : new String[]{first, second, third}) {
+                String lower = SearchIndex.lower(candidate);
+                if (lower == null) {
+                    continue;
+                }
+                if (lower.equals(value)) {
+                    return 15 * scoped;
+                }
+                if (lower.contains(value)) {
+                    best = 5 * scoped;
+                }
+            }
+            if (best == 0 && field == null && lowerKey != null && lowerKey.contains(value)) {
+                best = 2;
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package org.example.util;
+
+/**
+ * Курсор по токенам строки DAT-файла, разделенным табуляцией.
+ * <p>
+ * Заменяет цепочку {@code line.split("\t")} + {@code trim()} + {@code indexOf('=')} + {@code substring}:
+ * токены и пары {@code ключ=значение} отдаются как границы внутри исходной {@link CharSequence},
+ * а строки создаются только по запросу ({@link #key()}, {@link #value()}) для того, что действительно
+ * сохраняется. Пробельные символы обрезаются по тем же правилам, что и {@link String#trim()}.
+ * <p>
+ * Экземпляр не потокобезопасен и рассчитан на повторное использование через {@link #reset}.
+ */
+public final class FieldTokenizer {
+
+    private CharSequence text;
+    private int position;
+    private int limit;
+
+    private int tokenStart;
+    private int tokenEnd;
+    private int separator;
+
+    public FieldTokenizer reset(CharSequence text) {
+        return reset(text, 0, text.length());
+    }
+
+    public FieldTokenizer reset(CharSequence text, int start, int end) {
+        this.text = text;
+        this.position = start;
+        this.limit = end;
+        this.tokenStart = start;
+        this.tokenEnd = start;
+        this.separator = -1;
+        return this;
+    }
+
+    /**
+     * Переходит к следующему непустому токену.
+     *
+     * @return false, если токены закончились
+     */
+    public boolean next() {
+        while (position < limit) {
+            int segmentEnd = position;
+            while (segmentEnd < limit && text.charAt(segmentEnd) != '\t') {
+                segmentEnd++;
+            }
+            int start = trimStart(text, position, segmentEnd);
+            int end = trimEnd(text, start, segmentEnd);
+            position = segmentEnd + 1;
+            if (start < end) {
+                tokenStart = start;
+                tokenEnd = end;
+                separator = indexOf(text, '=', start, end);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true, если текущий токен имеет вид {@code ключ=значение}
+     */
+    public boolean hasValue() {
+        return separator >= 0;
+    }
+
+    public boolean tokenEquals(String expected) {
+        return regionEquals(tokenStart, tokenEnd, expected, false);
+    }
+
+    public boolean tokenEqualsIgnoreCase(String expected) {
+        return regionEquals(tokenStart, tokenEnd, expected, true);
+    }
+
+    public boolean keyEquals(String expected) {
+        return separator >= 0 && regionEquals(keyStart(), keyEnd(), expected, false);
+    }
+
+    public boolean keyEqualsIgnoreCase(String expected) {
+        return separator >= 0 && regionEquals(keyStart(), keyEnd(), expected, true);
+    }
+
+    public int keyStart() {
+        return tokenStart;
+    }
+
+    public int keyEnd() {
+        return trimEnd(text, tokenStart, separator);
+    }
+
+    public int valueStart() {
+        return trimStart(text, separator + 1, tokenEnd);
+    }
+
+    public int valueEnd() {
+        return tokenEnd;
+    }
+
+    public String token() {
+        return text.subSequence(tokenStart, tokenEnd).toString();
+    }
+
+    public String key() {
+        return text.subSequence(keyStart(), keyEnd()).toString();
+    }
+
+    public String value() {
+        return text.subSequence(valueStart(), tokenEnd).toString();
+    }
+
+    /**
+     * Имя поля в каноническом экземпляре из таблицы символов.
+     */
+    public String key(SymbolTable symbols) {
+        return symbols.intern(text, keyStart(), keyEnd());
+    }
+
+    /**
+     * Значение поля; короткие значения берутся из кеша, если он задан.
+     */
+    public String value(ValueCache cache) {
+        return cache != null ? cache.canonicalize(text, valueStart(), tokenEnd) : value();
+    }
+
+    /**
+     * Значение без обрамляющих квадратных скобок (если они есть).
+     */
+    public String unbracketedValue() {
+        int start = valueStart();
+        int end = tokenEnd;
+        if (end - start >= 2 && text.charAt(start) == '[' && text.charAt(end - 1) == ']') {
+            start++;
+            end--;
+        }
+        return text.subSequence(start, end).toString();
+    }
+
+    public CharSequence text() {
+        return text;
+    }
+
+    private boolean regionEquals(int start, int end, String expected, boolean ignoreCase) {
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            char actual = text.charAt(start + i);
+            char wanted = expected.charAt(i);
+            if (actual != wanted && !(ignoreCase && equalsIgnoreCase(actual, wanted))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equalsIgnoreCase(char left, char right) {
+        return Character.toUpperCase(left) == Character.toUpperCase(right)
+            || Character.toLowerCase(left) == Character.toLowerCase(right);
+    }
+
+    /**
+     * Индекс первого символа после ведущих пробелов (как в {@link String#trim()}).
+     */
+    public static int trimStart(CharSequence text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Индекс после последнего непробельного символа (как в {@link String#trim()}).
+     */
+    public static int trimEnd(CharSequence text, int start, int end) {
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    public static int indexOf(CharSequence text, char ch, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == ch) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
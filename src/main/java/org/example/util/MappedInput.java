@@ -0,0 +1,276 @@
+package org.example.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Чтение входных файлов CLI-сравнения через NIO.
+ * <p>
+ * Файлы от {@link #MAP_THRESHOLD} байт отображаются в память ({@link FileChannel#map}) сегментами
+ * до {@link #SEGMENT_BYTES} и декодируются прямо из отображения, без копирования байтов в кучу.
+ * Маленькие файлы читаются целиком: для них отображение дороже обычного чтения.
+ * <p>
+ * Кодировка текста определяется по BOM (UTF-8, UTF-16LE, UTF-16BE). Без BOM файл с нулевыми
+ * байтами в начале считается UTF-16 (LE, если нулей больше на нечетных позициях), иначе UTF-8.
+ */
+public final class MappedInput {
+
+    static final long MAP_THRESHOLD = 256 * 1024;
+    static final int SEGMENT_BYTES = 1 << 30;
+    static final int CHAR_BUFFER = 64 * 1024;
+    private static final int SNIFF_BYTES = 64;
+
+    private MappedInput() {
+    }
+
+    /**
+     * Получатель строк файла. Строка - диапазон [start, end) в {@code text} без символов
+     * перевода строки; {@code text} переиспользуется и действителен только во время вызова.
+     */
+    @FunctionalInterface
+    public interface LineHandler {
+        void line(CharSequence text, int start, int end);
+    }
+
+    /**
+     * Передает строки файла в {@code handler} по тем же правилам, что {@link java.io.BufferedReader#readLine()}:
+     * разделители {@code \n}, {@code \r} и {@code \r\n}, последняя строка без разделителя тоже передается.
+     * Память на декодирование постоянна и растет только под строку длиннее буфера.
+     */
+    public static void forEachLine(Path path, LineHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer bytes = size < MAP_THRESHOLD ? readFully(channel, size) : map(channel, 0);
+            long offset = 0;
+            Charset charset = detectCharset(bytes);
+            CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            LineSplitter lines = new LineSplitter(handler);
+            CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER);
+
+            while (true) {
+                boolean endOfInput = offset + bytes.limit() >= size;
+                CoderResult result = decoder.decode(bytes, chars, endOfInput);
+                if (result.isOverflow()) {
+                    chars = lines.drain(chars);
+                } else if (result.isUnderflow()) {
+                    if (endOfInput) {
+                        break;
+                    }
+                    // Следующий сегмент начинается с байтов, которые декодер еще не забрал
+                    offset += bytes.position();
+                    bytes = map(channel, offset);
+                } else {
+                    result.throwException();
+                }
+            }
+            while (decoder.flush(chars).isOverflow()) {
+                chars = lines.drain(chars);
+            }
+            lines.finish(lines.drain(chars));
+        }
+    }
+
+    /**
+     * Поток байтов файла. Большие файлы читаются из отображения в память по сегментам,
+     * без промежуточных буферов в куче.
+     */
+    public static InputStream openStream(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < MAP_THRESHOLD) {
+                ByteBuffer bytes = readFully(channel, size);
+                channel.close();
+                return new BufferInputStream(null, size, bytes);
+            }
+            return new BufferInputStream(channel, size, map(channel, 0));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Побайтно сравнивает содержимое двух файлов: сначала размеры, затем буферы
+     * ({@link ByteBuffer#mismatch}) по сегментам отображения, без декодирования и разбора.
+     */
+    public static boolean sameContent(Path first, Path second) throws IOException {
+        try (FileChannel a = FileChannel.open(first, StandardOpenOption.READ);
+             FileChannel b = FileChannel.open(second, StandardOpenOption.READ)) {
+            long size = a.size();
+            if (size != b.size()) {
+                return false;
+            }
+            if (size < MAP_THRESHOLD) {
+                return readFully(a, size).mismatch(readFully(b, size)) < 0;
+            }
+            for (long offset = 0; offset < size; offset += SEGMENT_BYTES) {
+                if (map(a, offset).mismatch(map(b, offset)) >= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Определяет кодировку по началу буфера и пропускает BOM, сдвигая позицию буфера.
+     */
+    static Charset detectCharset(ByteBuffer bytes) {
+        int start = bytes.position();
+        int length = bytes.limit() - start;
+        if (length >= 3 && (bytes.get(start) & 0xFF) == 0xEF && (bytes.get(start + 1) & 0xFF) == 0xBB
+            && (bytes.get(start + 2) & 0xFF) == 0xBF) {
+            bytes.position(start + 3);
+            return StandardCharsets.UTF_8;
+        }
+        if (length >= 2 && (bytes.get(start) & 0xFF) == 0xFF && (bytes.get(start + 1) & 0xFF) == 0xFE) {
+            bytes.position(start + 2);
+            return StandardCharsets.UTF_16LE;
+        }
+        if (length >= 2 && (bytes.get(start) & 0xFF) == 0xFE && (bytes.get(start + 1) & 0xFF) == 0xFF) {
+            bytes.position(start + 2);
+            return StandardCharsets.UTF_16BE;
+        }
+        // В UTF-8 тексте нулевых байтов нет; в UTF-16 ASCII-символы дают нули в старших байтах
+        int sniff = Math.min(length, SNIFF_BYTES) & ~1;
+        int evenZeros = 0;
+        int oddZeros = 0;
+        for (int i = 0; i < sniff; i += 2) {
+            evenZeros += bytes.get(start + i) == 0 ? 1 : 0;
+            oddZeros += bytes.get(start + i + 1) == 0 ? 1 : 0;
+        }
+        if (evenZeros == 0 && oddZeros == 0) {
+            return StandardCharsets.UTF_8;
+        }
+        return oddZeros >= evenZeros ? StandardCharsets.UTF_16LE : StandardCharsets.UTF_16BE;
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset) throws IOException {
+        long length = Math.min(SEGMENT_BYTES, channel.size() - offset);
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long size) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate((int) size);
+        while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+            // читаем до конца файла
+        }
+        return bytes.flip();
+    }
+
+    /**
+     * Режет декодированные символы на строки. Неполная последняя строка переносится в начало
+     * буфера до следующей порции; если строка не помещается в буфер, он удваивается.
+     */
+    private static final class LineSplitter {
+        private final LineHandler handler;
+        private boolean skipLineFeed;
+
+        LineSplitter(LineHandler handler) {
+            this.handler = handler;
+        }
+
+        /**
+         * @param chars буфер в режиме записи
+         * @return буфер в режиме записи с неполной строкой в начале
+         */
+        CharBuffer drain(CharBuffer chars) {
+            chars.flip();
+            int limit = chars.limit();
+            int lineStart = 0;
+            for (int i = 0; i < limit; i++) {
+                char c = chars.get(i);
+                if (skipLineFeed) {
+                    skipLineFeed = false;
+                    if (c == '\n') {
+                        lineStart = i + 1;
+                        continue;
+                    }
+                }
+                if (c == '\n' || c == '\r') {
+                    handler.line(chars, lineStart, i);
+                    lineStart = i + 1;
+                    skipLineFeed = c == '\r';
+                }
+            }
+            if (lineStart == 0 && limit == chars.capacity()) {
+                return CharBuffer.allocate(chars.capacity() * 2).put(chars);
+            }
+            chars.position(lineStart);
+            return chars.compact();
+        }
+
+        /**
+         * Передает последнюю строку, если файл не кончается переводом строки.
+         */
+        void finish(CharBuffer chars) {
+            chars.flip();
+            if (chars.hasRemaining()) {
+                handler.line(chars, 0, chars.limit());
+            }
+        }
+    }
+
+    private static final class BufferInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long size;
+        private ByteBuffer bytes;
+        private long offset;
+
+        BufferInputStream(FileChannel channel, long size, ByteBuffer bytes) {
+            this.channel = channel;
+            this.size = size;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return nextSegment() ? bytes.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextSegment()) {
+                return -1;
+            }
+            int count = Math.min(len, bytes.remaining());
+            bytes.get(buffer, off, count);
+            return count;
+        }
+
+        private boolean nextSegment() throws IOException {
+            if (bytes.hasRemaining()) {
+                return true;
+            }
+            offset += bytes.limit();
+            if (channel == null || offset >= size) {
+                return false;
+            }
+            bytes = map(channel, offset);
+            return bytes.hasRemaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.example.util;
+
+import java.util.Map;
+
+/**
+ * Таблица канонических строк для имен полей ({@code id}, {@code name}, {@code description}, ...).
+ * <p>
+ * Поиск идет прямо по символам исходной {@link CharSequence}, поэтому повторно встреченное имя
+ * не создает новой строки. Таблица локальна для одного потока; при передаче общей карты
+ * {@code shared} новые имена канонизируются через нее, и чанки одного парсинга,
+ * разобранные в разных потоках, ссылаются на одни и те же экземпляры.
+ */
+public final class SymbolTable {
+
+    private final Map<String, String> shared;
+    private String[] slots = new String[64];
+    private int size;
+
+    public SymbolTable() {
+        this(null);
+    }
+
+    public SymbolTable(Map<String, String> shared) {
+        this.shared = shared;
+    }
+
+    public String intern(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int mask = slots.length - 1;
+        int slot = spread(hash) & mask;
+        String candidate;
+        while ((candidate = slots[slot]) != null) {
+            if (candidate.hashCode() == hash && contentEquals(candidate, text, start, end)) {
+                return candidate;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        String symbol = text.subSequence(start, end).toString();
+        if (shared != null) {
+            String existing = shared.putIfAbsent(symbol, symbol);
+            if (existing != null) {
+                symbol = existing;
+            }
+        }
+        slots[slot] = symbol;
+        if (++size * 2 > slots.length) {
+            grow();
+        }
+        return symbol;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        String[] old = slots;
+        slots = new String[old.length * 2];
+        int mask = slots.length - 1;
+        for (String symbol : old) {
+            if (symbol == null) {
+                continue;
+            }
+            int slot = spread(symbol.hashCode()) & mask;
+            while (slots[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = symbol;
+        }
+    }
+
+    /**
+     * Хеш участка текста, совпадающий с {@link String#hashCode()} соответствующей строки.
+     */
+    static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash;
+    }
+
+    static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    static boolean contentEquals(String candidate, CharSequence text, int start, int end) {
+        int length = end - start;
+        if (candidate.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (candidate.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
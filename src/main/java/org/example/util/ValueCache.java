@@ -0,0 +1,46 @@
+package org.example.util;
+
+/**
+ * Кеш канонических экземпляров для коротких повторяющихся значений ({@code []}, {@code 0}, {@code -1}, ...).
+ * <p>
+ * Кеш прямого отображения фиксированного размера: значение попадает в слот по хешу и вытесняет
+ * прежнего владельца слота. Часто встречающиеся значения поэтому остаются в кеше, а уникальные
+ * (например, id) не раздувают его. Значения длиннее {@code maxLength} не кешируются.
+ * Экземпляр не потокобезопасен.
+ */
+public final class ValueCache {
+
+    private static final int DEFAULT_SLOTS = 4096;
+    private static final int DEFAULT_MAX_LENGTH = 32;
+
+    private final int maxLength;
+    private final String[] slots;
+
+    public ValueCache() {
+        this(DEFAULT_SLOTS, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * @param slots     число слотов (округляется вверх до степени двойки)
+     * @param maxLength максимальная длина кешируемого значения
+     */
+    public ValueCache(int slots, int maxLength) {
+        this.slots = new String[Integer.highestOneBit(Math.max(1, slots - 1)) << 1];
+        this.maxLength = maxLength;
+    }
+
+    public String canonicalize(CharSequence text, int start, int end) {
+        if (end - start > maxLength) {
+            return text.subSequence(start, end).toString();
+        }
+        int hash = SymbolTable.hash(text, start, end);
+        int slot = SymbolTable.spread(hash) & (slots.length - 1);
+        String cached = slots[slot];
+        if (cached != null && cached.hashCode() == hash && SymbolTable.contentEquals(cached, text, start, end)) {
+            return cached;
+        }
+        String value = text.subSequence(start, end).toString();
+        slots[slot] = value;
+        return value;
+    }
+}
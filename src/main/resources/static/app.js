@@ -4,14 +4,31 @@ const state = {
     visibleStart: 0,
     visibleEnd: 50, // Начальное количество видимых записей
     itemHeight: 150, // Примерная высота одной карточки записи (обновлено под новый дизайн)
-    searchQuery: '' // Текущий поисковый запрос
+    searchQuery: '', // Текущий поисковый запрос
+    diffId: null, // Id сессии diff на сервере: экспорт отправляет только решения
+    summary: null, // Сводка по всем записям diff от сервера
+    pendingOperations: [], // Операции слияния, еще не отправленные в сессию на сервере
+    operationsSynced: true, // false, если отправка операций не удалась - экспорт пришлет решения
+    paged: false, // Записи подгружаются страницами с сервера (GET /diff/{id}/records)
+    pageTotal: 0, // Сколько записей подходит под текущий фильтр на сервере
+    pageOffset: 0, // Позиция state.records[0] в отфильтрованном списке на сервере (постраничный режим)
+    pageRequest: null, // Текущий запрос страницы (чтобы не дублировать)
+    searchIds: null, // Id записей, найденных сервером для searchIdsQuery
+    searchIdsQuery: '',
+    streaming: false // Записи еще приходят потоком с /upload/stream, diffId пока неизвестен
 };
 
+const PAGE_SIZE = 200;
+const PAGE_WINDOW = 5; // Сколько страниц подряд держится в памяти в постраничном режиме
+
 const elements = {
     uploadBtn: document.getElementById('uploadBtn'),
     exportBtn: document.getElementById('exportBtn'),
     oldInput: document.getElementById('oldFile'),
     newInput: document.getElementById('newFile'),
+    formatSelect: document.getElementById('formatSelect'),
+    changesOnlyUpload: document.getElementById('changesOnlyUpload'),
+    pagedUpload: document.getElementById('pagedUpload'),
     statusText: document.getElementById('statusText'),
     recordsContainer: document.getElementById('recordsContainer'),
     recordsWrapper: document.querySelector('.records-wrapper'),
@@ -266,7 +283,7 @@ if (elements.showOnlyChanges) {
             ? state.records.filter(r => r.hasChanges)
             : state.records;
         state.visibleEnd = Math.min(20, visibleRecords.length);
-        renderRecords();
+        refreshRecords();
     });
 }
 if (elements.showOnlyChangedFields) {
@@ -275,7 +292,7 @@ if (elements.showOnlyChangedFields) {
         state.visibleStart = 0;
         state.visibleEnd = Math.min(20, state.records.length);
         // Перерисовываем записи, так как фильтр влияет на видимость записей
-        renderRecords();
+        refreshRecords();
     });
 }
 if (elements.massActionsBtn) {
@@ -325,7 +342,7 @@ if (elements.toggleStats && elements.statsContent) {
 }
 
 // Функция выполнения поиска
-function performSearch() {
+async function performSearch() {
     console.log('performSearch вызвана');
     
     if (!state.records || state.records.length === 0) {
@@ -365,7 +382,12 @@ function performSearch() {
         }, 150);
     }
     
-    // Выполняем рендеринг
+    // Выполняем рендеринг (в постраничном режиме поиск выполняет сервер)
+    if (state.paged) {
+        loadPage(true);
+        return;
+    }
+    await loadSearchIds(query);
     renderRecords();
     
     // Показываем статус поиска
@@ -381,7 +403,7 @@ function performSearch() {
         // дополнительно фильтруем записи, в которых нет измененных полей
         if (showOnlyChangedFields) {
             visibleRecords = visibleRecords.filter(record => {
-                return record.fields.some(field => 
+                return !record.same && record.fields.some(field => 
                     field.status === 'changed' || field.status === 'added' || field.status === 'removed'
                 );
             });
@@ -425,7 +447,7 @@ if (elements.searchInput) {
             elements.clearSearch.style.display = 'none';
             state.visibleStart = 0;
             state.visibleEnd = Math.min(20, state.records.length);
-            renderRecords();
+            refreshRecords();
         }
     });
 }
@@ -469,7 +491,7 @@ if (elements.clearSearch) {
         elements.clearSearch.style.display = 'none';
         state.visibleStart = 0;
         state.visibleEnd = Math.min(20, state.records.length);
-        renderRecords();
+        refreshRecords();
         elements.searchInput.focus();
     });
 }
@@ -538,15 +560,29 @@ async function handleUpload() {
     const formData = new FormData();
     formData.append('old', oldFile);
     formData.append('new', newFile);
+    if (elements.formatSelect && elements.formatSelect.value !== 'auto') {
+        formData.append('format', elements.formatSelect.value);
+    }
+    if (elements.changesOnlyUpload?.checked) {
+        formData.append('changesOnly', 'true');
+    }
+    if (elements.pagedUpload?.checked) {
+        formData.append('paged', 'true');
+    }
 
         setStatus('Загружаю и сравниваю...');
         elements.uploadBtn.disabled = true;
         elements.recordsContainer.innerHTML = '<div class="hint">Обработка файлов, пожалуйста подождите...</div>';
 
     try {
+        if (!elements.pagedUpload?.checked) {
+            await uploadStreaming(formData);
+            return;
+        }
         console.log('Отправка запроса /upload...');
         const response = await fetch('/upload', {
             method: 'POST',
+            headers: { 'Accept': `${COMPACT_DIFF_TYPE}, application/json;q=0.9` },
             body: formData
         });
         console.log('Получен ответ:', response.status, response.statusText);
@@ -559,6 +595,21 @@ async function handleUpload() {
         }
         
         const contentType = response.headers.get('content-type');
+        if (contentType && contentType.includes(COMPACT_DIFF_TYPE)) {
+            const data = await readDiffPayload(response);
+            requestAnimationFrame(() => {
+                applyDiffResponse(data);
+                const confidence = data.formatConfidence != null
+                    ? ` (уверенность ${Math.round(data.formatConfidence * 100)}%)`
+                    : '';
+                setStatus(`Найдено записей: ${state.summary?.total ?? 0}. Формат: ${state.format}${confidence}`);
+                elements.exportBtn.disabled = false;
+                if (elements.massActionsBtn) {
+                    elements.massActionsBtn.disabled = false;
+                }
+            });
+            return;
+        }
         if (!contentType || !contentType.includes('application/json')) {
             const text = await response.text();
             console.error('Неожиданный Content-Type. Ответ:', text.substring(0, 500));
@@ -586,7 +637,14 @@ async function handleUpload() {
         // Используем requestAnimationFrame для неблокирующей обработки
         requestAnimationFrame(() => {
             applyDiffResponse(data);
-            setStatus(`Найдено записей: ${state.records.length}. Формат: ${state.format}`);
+            const confidence = data.formatConfidence != null
+                ? ` (уверенность ${Math.round(data.formatConfidence * 100)}%)`
+                : '';
+            const omitted = state.summary?.omitted && !state.paged
+                ? `, без изменений на сервере: ${state.summary.omitted}`
+                : '';
+            const found = state.paged ? state.summary?.total ?? 0 : state.records.length;
+            setStatus(`Найдено записей: ${found}${omitted}. Формат: ${state.format}${confidence}`);
             elements.exportBtn.disabled = false;
             if (elements.massActionsBtn) {
                 elements.massActionsBtn.disabled = false;
@@ -600,9 +658,113 @@ async function handleUpload() {
     }
 }
 
+/**
+ * Потоковый upload (POST /upload/stream, NDJSON): записи показываются по мере того, как сервер
+ * строит diff. diffId и сводка приходят последней строкой, до нее экспорт недоступен.
+ */
+async function uploadStreaming(formData) {
+    console.log('Отправка запроса /upload/stream...');
+    const response = await fetch('/upload/stream', {
+        method: 'POST',
+        body: formData
+    });
+    if (!response.ok) {
+        const text = await response.text();
+        console.error('Ошибка ответа:', text);
+        throw new Error(text || 'Ошибка загрузки');
+    }
+
+    let start = null;
+    let done = null;
+    const handleLine = line => {
+        if (!line.trim()) return;
+        const event = JSON.parse(line);
+        switch (event.type) {
+            case 'start':
+                start = event;
+                applyDiffResponse({ format: event.format, records: [] });
+                state.streaming = true;
+                elements.exportBtn.disabled = true;
+                break;
+            case 'records':
+                appendStreamedRecords(event.records || []);
+                break;
+            case 'done':
+                done = event;
+                break;
+            case 'error':
+                throw new Error(event.message || 'Ошибка построения diff');
+        }
+    };
+
+    const reader = response.body.getReader();
+    const decoder = new TextDecoder();
+    let buffer = '';
+    try {
+        while (true) {
+            const { value, done: finished } = await reader.read();
+            if (finished) break;
+            buffer += decoder.decode(value, { stream: true });
+            let newline;
+            while ((newline = buffer.indexOf('\n')) >= 0) {
+                handleLine(buffer.slice(0, newline));
+                buffer = buffer.slice(newline + 1);
+            }
+        }
+        handleLine(buffer + decoder.decode());
+    } finally {
+        state.streaming = false;
+    }
+    if (!start || !done) {
+        throw new Error('Ответ сервера оборвался до конца diff');
+    }
+
+    state.diffId = done.diffId || null;
+    state.summary = done.summary || null;
+    renderRecords();
+    updateStatistics();
+    const confidence = start.formatConfidence != null
+        ? ` (уверенность ${Math.round(start.formatConfidence * 100)}%)`
+        : '';
+    const omitted = state.summary?.omitted
+        ? `, без изменений на сервере: ${state.summary.omitted}`
+        : '';
+    setStatus(`Найдено записей: ${state.records.length}${omitted}. Формат: ${state.format}${confidence}`);
+    elements.exportBtn.disabled = false;
+    if (elements.massActionsBtn) {
+        elements.massActionsBtn.disabled = false;
+    }
+}
+
+let streamRenderPending = false;
+
+/**
+ * Добавляет очередную часть потокового diff. Перерисовка - не чаще одного раза за кадр.
+ */
+function appendStreamedRecords(records) {
+    records.forEach(record => state.records.push(processRecord(record)));
+    setStatus(`Получено записей: ${state.records.length}...`);
+    if (streamRenderPending) return;
+    streamRenderPending = true;
+    requestAnimationFrame(() => {
+        streamRenderPending = false;
+        state.visibleEnd = Math.max(state.visibleEnd, Math.min(20, state.records.length));
+        renderRecords();
+        updateStatistics();
+    });
+}
+
 function applyDiffResponse(payload) {
     console.log('applyDiffResponse вызвана с payload:', payload);
     state.format = payload.format || 'line';
+    state.diffId = payload.diffId || null;
+    state.summary = payload.summary || null;
+    state.pendingOperations = [];
+    state.operationsSynced = true;
+    state.paged = Boolean(state.diffId && elements.pagedUpload?.checked);
+    state.pageTotal = 0;
+    state.pageOffset = 0;
+    state.pageRequest = null;
     console.log('Установлен формат:', state.format);
     
     const recordsArray = payload.records || [];
@@ -612,23 +774,7 @@ function applyDiffResponse(payload) {
         if (idx < 3) {
             console.log(`Запись ${idx}:`, record);
         }
-        const processedRecord = {
-            ...record,
-            deleted: record.deleted || false,
-            fields: (record.fields || []).map(field => ({
-                ...field,
-                mergedValue: field.mergedValue ?? field.newValue ?? field.oldValue ?? '',
-                deleted: field.deleted || false
-            }))
-        };
-        
-        // Проверяем, есть ли изменения в записи
-        const hasChanges = processedRecord.fields.some(field => 
-            field.status === 'changed' || field.status === 'added' || field.status === 'removed'
-        );
-        processedRecord.hasChanges = hasChanges;
-        
-        return processedRecord;
+        return processRecord(record);
     });
     
     console.log('Всего записей после обработки:', state.records.length);
@@ -640,6 +786,12 @@ function applyDiffResponse(payload) {
     state.visibleStart = 0;
     state.visibleEnd = Math.min(20, state.records.length); // Начальные 20 записей для быстрой загрузки
     
+    if (state.paged) {
+        setupVirtualScroll();
+        loadPage(true);
+        return;
+    }
+    
     console.log('Начинаю рендеринг...');
     // Используем requestAnimationFrame для плавного рендеринга
     requestAnimationFrame(() => {
@@ -649,9 +801,194 @@ function applyDiffResponse(payload) {
     });
 }
 
+function processRecord(record) {
+    if (record.same && record.values) {
+        return compactRecord(record);
+    }
+    const processedRecord = {
+        ...record,
+        deleted: record.deleted || false,
+        fields: (record.fields || []).map(field => ({
+            ...field,
+            mergedValue: field.mergedValue ?? field.newValue ?? field.oldValue ?? '',
+            deleted: field.deleted || false
+        }))
+    };
+    
+    // Проверяем, есть ли изменения в записи
+    processedRecord.hasChanges = processedRecord.fields.some(field => 
+        field.status === 'changed' || field.status === 'added' || field.status === 'removed'
+    );
+    return processedRecord;
+}
+
+/**
+ * Постраничный режим: в state.records держится окно не больше PAGE_WINDOW страниц подряд,
+ * state.pageOffset - позиция первой записи окна в отфильтрованном списке на сервере.
+ * Загружает страницу рядом с видимой областью (state.visibleStart/End - позиции в этом списке)
+ * и отбрасывает страницы на дальнем от нее краю окна. При переходе далеко за окно оно
+ * начинается заново со страницы видимой области. При reset окно начинается с начала списка.
+ */
+async function loadPage(reset) {
+    if (!state.paged || !state.diffId) return;
+    if (!reset && state.pageRequest) return; // Продолжим после текущего запроса
+    const windowEnd = state.pageOffset + state.records.length;
+    let offset;
+    let mode;
+    if (reset) {
+        offset = 0;
+        mode = 'replace';
+    } else if (state.visibleEnd < state.pageOffset || state.visibleStart >= windowEnd) {
+        offset = Math.floor(state.visibleStart / PAGE_SIZE) * PAGE_SIZE;
+        mode = 'replace';
+    } else if (windowEnd < state.pageTotal && state.visibleEnd + PAGE_SIZE / 4 >= windowEnd) {
+        offset = windowEnd;
+        mode = 'append';
+    } else if (state.pageOffset > 0 && state.visibleStart - PAGE_SIZE / 4 < state.pageOffset) {
+        offset = Math.max(0, state.pageOffset - PAGE_SIZE);
+        mode = 'prepend';
+    } else {
+        return;
+    }
+    const showOnlyChanges = elements.showOnlyChanges?.checked ?? false;
+    const showOnlyChangedFields = elements.showOnlyChangedFields?.checked ?? false;
+    const params = new URLSearchParams({
+        offset,
+        limit: mode === 'prepend' ? state.pageOffset - offset : PAGE_SIZE
+    });
+    // Фильтры записей применяет сервер: позиции в окне должны совпадать с позициями в его списке
+    if (showOnlyChanges || showOnlyChangedFields) {
+        params.set('status', 'added,removed,changed');
+    }
+    if (state.searchQuery) {
+        params.set('q', state.searchQuery);
+    }
+    const request = params.toString();
+    if (state.pageRequest === request) return;
+    state.pageRequest = request;
+    let loaded = false;
+    try {
+        // Перед запросом отправляем правки, чтобы поиск на сервере видел итоговые значения
+        await flushOperations();
+        const response = await fetch(`/diff/${encodeURIComponent(state.diffId)}/records?${request}`, {
+            headers: { 'Accept': `${COMPACT_DIFF_TYPE}, application/json;q=0.9` }
+        });
+        if (!response.ok) {
+            throw new Error(await response.text() || `HTTP ${response.status}`);
+        }
+        const page = await readDiffPayload(response);
+        if (state.pageRequest !== request) return; // Фильтр успел измениться
+        const records = (page.records || []).map(processRecord);
+        if (mode === 'replace') {
+            state.records = records;
+            state.pageOffset = offset;
+        } else if (mode === 'append') {
+            state.records = state.records.concat(records);
+        } else {
+            state.records = records.concat(state.records);
+            state.pageOffset = offset;
+        }
+        const excess = state.records.length - PAGE_WINDOW * PAGE_SIZE;
+        if (excess > 0 && mode === 'prepend') {
+            state.records = state.records.slice(0, state.records.length - excess);
+        } else if (excess > 0) {
+            state.records = state.records.slice(excess);
+            state.pageOffset += excess;
+        }
+        state.pageTotal = page.total;
+        if (reset) {
+            state.visibleStart = 0;
+            state.visibleEnd = Math.min(20, state.pageTotal);
+            if (elements.recordsWrapper) {
+                elements.recordsWrapper.scrollTop = 0;
+            }
+        }
+        loaded = records.length > 0;
+        updateStatistics();
+        renderRecords();
+    } catch (error) {
+        console.error('Ошибка загрузки страницы записей:', error);
+        setStatus(error.message, true);
+    } finally {
+        if (state.pageRequest === request) {
+            state.pageRequest = null;
+            // Видимая область могла уйти дальше, пока шел запрос
+            if (loaded) {
+                loadPage(false);
+            }
+        }
+    }
+}
+
+/**
+ * Запись без изменений приходит компактно (same + values: ключ, значение, ...).
+ * Поля создаются при первом обращении к record.fields (рендер, редактирование);
+ * до этого при экспорте на сервер уходит компактная форма.
+ */
+function compactRecord(record) {
+    const compact = {
+        id: record.id,
+        deleted: record.deleted || false,
+        same: true,
+        values: record.values,
+        hasChanges: false
+    };
+    Object.defineProperty(compact, 'fields', {
+        configurable: true,
+        enumerable: false,
+        get() {
+            const fields = expandValues(compact.values, compact.deleted);
+            delete compact.same;
+            delete compact.values;
+            Object.defineProperty(compact, 'fields', {
+                value: fields,
+                writable: true,
+                enumerable: true,
+                configurable: true
+            });
+            return fields;
+        }
+    });
+    return compact;
+}
+
+function expandValues(values, deleted) {
+    const fields = [];
+    for (let i = 0; i + 1 < values.length; i += 2) {
+        const value = values[i + 1];
+        fields.push({
+            key: values[i],
+            oldValue: value,
+            newValue: value,
+            mergedValue: value ?? '',
+            status: 'same',
+            deleted
+        });
+    }
+    return fields;
+}
+
+/**
+ * Перерисовка после смены фильтра или поиска: в постраничном режиме запрашивает страницу заново.
+ */
+function refreshRecords() {
+    if (state.paged) {
+        loadPage(true);
+    } else {
+        renderRecords();
+    }
+}
+
 function renderRecords() {
+    if (state.paged) {
+        renderPagedRecords();
+        return;
+    }
     if (!state.records.length) {
-        elements.recordsContainer.innerHTML = '<div class="hint">Данные не загружены.</div>';
+        elements.recordsContainer.innerHTML = state.paged
+            ? '<div class="hint">Нет записей для отображения.</div>'
+            : '<div class="hint">Данные не загружены.</div>';
+        updateProgressIndicator(0, 0);
         return;
     }
     
@@ -667,7 +1004,7 @@ function renderRecords() {
     // дополнительно фильтруем записи, в которых нет измененных полей
     if (showOnlyChangedFields) {
         visibleRecords = visibleRecords.filter(record => {
-            return record.fields.some(field => 
+            return !record.same && record.fields.some(field => 
                 field.status === 'changed' || field.status === 'added' || field.status === 'removed'
             );
         });
@@ -794,14 +1131,69 @@ function renderRecords() {
     updateProgressIndicator(renderedCount, visibleRecords.length);
 }
 
+/**
+ * Постраничный режим: позиции списка - позиции на сервере, записи берутся из окна со сдвигом
+ * state.pageOffset. Записи вне окна занимают место спейсеров, пока их страница не загружена.
+ */
+function renderPagedRecords() {
+    const total = state.pageTotal;
+    if (total === 0) {
+        elements.recordsContainer.innerHTML = '<div class="hint">Нет записей для отображения.</div>';
+        updateProgressIndicator(0, 0);
+        return;
+    }
+    const buffer = 5;
+    const windowEnd = state.pageOffset + state.records.length;
+    const start = Math.min(Math.max(0, state.visibleStart - buffer, state.pageOffset), windowEnd);
+    const end = Math.max(Math.min(total, state.visibleEnd + buffer, windowEnd), start);
+
+    const fragment = document.createDocumentFragment();
+    if (start > 0) {
+        const spacer = document.createElement('div');
+        spacer.className = 'virtual-spacer';
+        spacer.style.height = `${start * state.itemHeight}px`;
+        fragment.appendChild(spacer);
+    }
+    for (let position = start; position < end; position++) {
+        const recordIndex = position - state.pageOffset;
+        const record = state.records[recordIndex];
+        const card = document.createElement('div');
+        card.className = 'record' + (record.deleted ? ' deleted' : '');
+        card.dataset.recordIndex = recordIndex;
+        card.appendChild(buildRecordHeader(record, recordIndex));
+        card.appendChild(buildFieldGrid(record, recordIndex));
+        fragment.appendChild(card);
+    }
+    if (end < total) {
+        const spacer = document.createElement('div');
+        spacer.className = 'virtual-spacer';
+        spacer.style.height = `${(total - end) * state.itemHeight}px`;
+        fragment.appendChild(spacer);
+    }
+    elements.recordsContainer.innerHTML = '';
+    elements.recordsContainer.appendChild(fragment);
+    applyFieldFilter();
+    updateProgressIndicator(end - start, total);
+}
+
 function matchesSearch(record, query) {
     if (!query) return true;
     
+    // Результат серверного поиска по индексу (если он есть для текущего запроса)
+    if (state.searchIds && state.searchIdsQuery === query) {
+        return state.searchIds.has(record.id);
+    }
+    
     // Поиск по ID
     if (record.id && record.id.toLowerCase().includes(query)) {
         return true;
     }
     
+    // Компактную запись ищем по парам ключ-значение, не разворачивая поля
+    if (record.same && record.values) {
+        return record.values.some(value => (value || '').toLowerCase().includes(query));
+    }
+    
     // Поиск по значениям полей
     if (record.fields) {
         for (const field of record.fields) {
@@ -828,7 +1220,7 @@ function updateProgressIndicator(renderedCount = 0, totalVisible = 0) {
         existing.remove();
     }
     
-    if (!state.records.length) return;
+    if (!state.records.length && !state.paged) return;
     
     const showOnlyChanges = elements.showOnlyChanges?.checked ?? false;
     const showOnlyChangedFields = elements.showOnlyChangedFields?.checked ?? false;
@@ -841,7 +1233,7 @@ function updateProgressIndicator(renderedCount = 0, totalVisible = 0) {
     // дополнительно фильтруем записи, в которых нет измененных полей
     if (showOnlyChangedFields) {
         visibleRecords = visibleRecords.filter(record => {
-            return record.fields.some(field => 
+            return !record.same && record.fields.some(field => 
                 field.status === 'changed' || field.status === 'added' || field.status === 'removed'
             );
         });
@@ -852,7 +1244,7 @@ function updateProgressIndicator(renderedCount = 0, totalVisible = 0) {
         visibleRecords = visibleRecords.filter(record => matchesSearch(record, state.searchQuery));
     }
     
-    const total = totalVisible || visibleRecords.length;
+    const total = state.paged ? state.pageTotal : (totalVisible || visibleRecords.length);
     const shown = renderedCount || Math.min(state.visibleEnd, total);
     const percent = total > 0 ? Math.round((shown / total) * 100) : 0;
     
@@ -861,7 +1253,7 @@ function updateProgressIndicator(renderedCount = 0, totalVisible = 0) {
     indicator.className = 'progress-indicator';
     let statusText = `Показано: ${shown} из ${total} записей (${percent}%)`;
     if (showOnlyChanges) {
-        statusText += ` | Всего записей: ${state.records.length}`;
+        statusText += ` | Всего записей: ${state.paged ? state.summary?.total ?? 0 : state.records.length}`;
     }
     if (state.searchQuery) {
         statusText += ` | Поиск: "${state.searchQuery}"`;
@@ -909,7 +1301,7 @@ function handleScroll() {
     // дополнительно фильтруем записи, в которых нет измененных полей
     if (showOnlyChangedFields) {
         visibleRecords = visibleRecords.filter(record => {
-            return record.fields.some(field => 
+            return !record.same && record.fields.some(field => 
                 field.status === 'changed' || field.status === 'added' || field.status === 'removed'
             );
         });
@@ -920,7 +1312,8 @@ function handleScroll() {
         visibleRecords = visibleRecords.filter(record => matchesSearch(record, state.searchQuery));
     }
     
-    if (visibleRecords.length === 0) return;
+    const total = state.paged ? state.pageTotal : visibleRecords.length;
+    if (total === 0) return;
     
     const scrollTop = container.scrollTop;
     const containerHeight = container.clientHeight;
@@ -933,9 +1326,14 @@ function handleScroll() {
     // Обновляем только если изменилось значительно (для производительности)
     if (Math.abs(start - state.visibleStart) > 3 || Math.abs(end - state.visibleEnd) > 3) {
         state.visibleStart = Math.max(0, start);
-        state.visibleEnd = Math.min(visibleRecords.length, end);
+        state.visibleEnd = Math.min(total, end);
         renderRecords();
     }
+    
+    // Постраничный режим: подгружаем страницу у видимой области, если окно ее не покрывает
+    if (state.paged) {
+        loadPage(false);
+    }
 }
 
 function buildRecordHeader(record, recordIndex) {
@@ -1092,6 +1490,7 @@ function handleRecordsClick(event) {
                 field.deleted = false;
             });
             record.deleted = false;
+            queueOperation({ op: 'copyOld', id: record.id });
             break;
         case 'record-new':
             record.fields.forEach(field => {
@@ -1099,6 +1498,7 @@ function handleRecordsClick(event) {
                 field.deleted = false;
             });
             record.deleted = false;
+            queueOperation({ op: 'copyNew', id: record.id });
             break;
         case 'record-reset':
             record.fields.forEach(field => {
@@ -1106,23 +1506,33 @@ function handleRecordsClick(event) {
                 field.deleted = false;
             });
             record.deleted = false;
+            queueOperation({ op: 'reset', id: record.id });
             break;
         case 'record-delete':
             record.deleted = !record.deleted;
             record.fields.forEach(field => field.deleted = record.deleted);
+            queueOperation({ op: record.deleted ? 'deleteRecord' : 'restoreRecord', id: record.id });
             break;
         case 'field-old':
             setFieldValue(record, fieldIndex, record.fields[fieldIndex]?.oldValue ?? '');
+            queueOperation({ op: 'copyOld', id: record.id, field: fieldIndex });
             break;
         case 'field-new':
             setFieldValue(record, fieldIndex, record.fields[fieldIndex]?.newValue ?? '');
+            queueOperation({ op: 'copyNew', id: record.id, field: fieldIndex });
             break;
         case 'field-reset':
             setFieldValue(record, fieldIndex,
                 record.fields[fieldIndex]?.newValue ?? record.fields[fieldIndex]?.oldValue ?? '');
+            queueOperation({ op: 'reset', id: record.id, field: fieldIndex });
             break;
         case 'field-delete':
             toggleFieldDelete(record, fieldIndex);
+            queueOperation({
+                op: record.fields[fieldIndex]?.deleted ? 'deleteField' : 'reset',
+                id: record.id,
+                field: fieldIndex
+            });
             break;
         default:
             break;
@@ -1161,6 +1571,7 @@ function handleMergedInput(event) {
 
     field.mergedValue = target.textContent || target.innerText || '';
     field.deleted = false;
+    queueOperation({ op: 'setMerged', id: state.records[recordIndex].id, field: fieldIndex, value: field.mergedValue });
     updateStatuses(state.records[recordIndex]);
     refreshFieldStyles(recordIndex);
     // Применяем фильтр полей после обновления статусов
@@ -1233,14 +1644,16 @@ function updateStatuses(record) {
     });
 }
 
-function showMassActions() {
-    if (!state.records.length) {
+const MASS_GROUP_LIMIT = 500;
+
+async function showMassActions() {
+    if (!state.records.length && !state.diffId) {
         setStatus('Нет данных для анализа', true);
         return;
     }
     
-    // Группируем похожие изменения
-    const changeGroups = groupSimilarChanges();
+    // Группируем похожие изменения: на сервере по сессии diff, без нее - локально
+    const changeGroups = (state.diffId && await loadChangeGroups()) || groupSimilarChanges();
     
     if (changeGroups.length === 0) {
         setStatus('Нет похожих изменений для группировки', true);
@@ -1304,6 +1717,7 @@ function groupSimilarChanges() {
     const groups = new Map();
     
     state.records.forEach((record, recordIndex) => {
+        if (record.same) return;
         record.fields.forEach((field, fieldIndex) => {
             // Группируем только измененные поля
             if (field.status === 'changed' && field.oldValue && field.newValue) {
@@ -1330,7 +1744,75 @@ function groupSimilarChanges() {
     return Array.from(groups.values()).filter(g => g.count > 1);
 }
 
+/**
+ * Группы одинаковых изменений сессии diff с сервера (GET /diff/{id}/groups).
+ * Возвращает null, если сервер недоступен: тогда группируем локально.
+ */
+async function loadChangeGroups() {
+    try {
+        const params = new URLSearchParams({ minCount: 2, limit: MASS_GROUP_LIMIT });
+        const response = await fetch(`/diff/${encodeURIComponent(state.diffId)}/groups?${params}`);
+        if (!response.ok) {
+            throw new Error(await response.text() || `HTTP ${response.status}`);
+        }
+        const result = await response.json();
+        return result.groups.map(group => ({
+            id: group.id,
+            fieldKey: group.key,
+            oldValue: group.oldValue,
+            newValue: group.newValue,
+            count: group.count
+        }));
+    } catch (error) {
+        console.warn('Группы изменений на сервере недоступны, группирую локально:', error);
+        return null;
+    }
+}
+
+/**
+ * Массовое слияние группы на сервере одним запросом. Локальные записи обновляются
+ * по совпадению поля, OLD и NEW, без очереди операций по каждому полю.
+ */
+async function applyServerMassChange(group, action) {
+    try {
+        // Сначала отправляем накопленные правки, чтобы массовое слияние легло поверх них
+        await flushOperations();
+        const response = await fetch(`/diff/${encodeURIComponent(state.diffId)}/groups/apply`, {
+            method: 'POST',
+            headers: {'Content-Type': 'application/json'},
+            body: JSON.stringify({ op: action === 'old' ? 'copyOld' : 'copyNew', groups: [group.id] })
+        });
+        if (!response.ok) {
+            throw new Error(await response.text() || `HTTP ${response.status}`);
+        }
+        const result = await response.json();
+        state.records.forEach(record => {
+            if (record.same) return;
+            let touched = false;
+            record.fields.forEach(field => {
+                if (field.key === group.fieldKey && field.oldValue === group.oldValue
+                    && field.newValue === group.newValue) {
+                    field.mergedValue = action === 'old' ? field.oldValue : field.newValue;
+                    field.deleted = false;
+                    touched = true;
+                }
+            });
+            if (touched) updateStatuses(record);
+        });
+        setStatus(`Применено к ${result.applied} из ${group.count} записей`);
+        renderRecords();
+        showMassActions();
+    } catch (error) {
+        console.error('Ошибка массового слияния:', error);
+        setStatus(error.message, true);
+    }
+}
+
 function applyMassChange(group, action) {
+    if (group.id !== undefined) {
+        applyServerMassChange(group, action);
+        return;
+    }
     let applied = 0;
     
     group.records.forEach(({ recordIndex, fieldIndex }) => {
@@ -1347,6 +1829,7 @@ function applyMassChange(group, action) {
                 field.mergedValue = field.oldValue;
             }
             field.deleted = false;
+            queueOperation({ op: action === 'old' ? 'copyOld' : 'copyNew', id: record.id, field: fieldIndex });
             updateStatuses(record);
             applied++;
         }
@@ -1366,7 +1849,7 @@ function escapeHtml(text) {
 }
 
 function updateStatistics() {
-    if (!elements.statsContent || !state.records.length) {
+    if (!elements.statsContent || (!state.records.length && !state.summary)) {
         return;
     }
     
@@ -1382,7 +1865,18 @@ function updateStatistics() {
         totalRemovedFields: 0
     };
     
+    // Записи, которые сервер не отправил (режим "только изменения"), все без изменений
+    const omitted = state.paged ? 0 : state.summary?.omitted || 0;
+    stats.total += omitted;
+    stats.common += omitted;
+    stats.withoutChanges += omitted;
+    
     state.records.forEach(record => {
+        if (record.same) {
+            stats.common++;
+            stats.withoutChanges++;
+            return;
+        }
         const hasOld = record.fields.some(f => f.oldValue !== null);
         const hasNew = record.fields.some(f => f.newValue !== null);
         
@@ -1411,6 +1905,17 @@ function updateStatistics() {
         });
     });
     
+    // В постраничном режиме счетчики записей берем из сводки сервера,
+    // счетчики полей - по загруженным записям
+    if (state.paged && state.summary) {
+        stats.total = state.summary.total;
+        stats.added = state.summary.added;
+        stats.removed = state.summary.removed;
+        stats.common = state.summary.changed + state.summary.unchanged;
+        stats.withChanges = state.summary.changed;
+        stats.withoutChanges = state.summary.unchanged;
+    }
+    
     const html = `
         <div class="stats-section">
             <div class="stats-item">
@@ -1460,25 +1965,34 @@ function updateStatistics() {
 }
 
 async function handleExport() {
-    if (!state.records.length) {
+    if (!state.records.length && !state.diffId) {
         setStatus('Нет данных для экспорта', true);
         return;
     }
     try {
         setStatus('Формирую файл...');
-        const response = await fetch('/export', {
-            method: 'POST',
-            headers: {'Content-Type': 'application/json'},
-            body: JSON.stringify({
-                format: state.format,
-                records: state.records
-            })
-        });
+        if (state.diffId) {
+            await flushOperations();
+        }
+        // Если все операции уже применены на сервере, решения не нужны
+        let response = await postExport(state.diffId
+            ? { format: state.format, diffId: state.diffId,
+                decisions: state.operationsSynced ? [] : collectDecisions() }
+            : { format: state.format, records: state.records });
+        // Сессия на сервере истекла: если у клиента есть все записи, отправляем их целиком
+        if (response.status === 410 && state.diffId && !state.summary?.omitted) {
+            console.warn('Сессия diff истекла, экспорт с полной передачей записей');
+            state.diffId = null;
+            response = await postExport({ format: state.format, records: state.records });
+        }
         if (!response.ok) {
             const text = await response.text();
             throw new Error(text || 'Ошибка экспорта');
         }
-        const blob = await response.blob();
+        // Сервер обрывает соединение, если не смог дописать файл: обрезанный файл не сохраняем
+        const blob = await response.blob().catch(error => {
+            throw new Error(`Экспорт оборвался, файл не сохранен: ${error.message}`);
+        });
         const url = window.URL.createObjectURL(blob);
         const a = document.createElement('a');
         a.href = url;
@@ -1494,3 +2008,222 @@ async function handleExport() {
     }
 }
 
+function postExport(payload) {
+    return fetch('/export', {
+        method: 'POST',
+        headers: {'Content-Type': 'application/json'},
+        body: JSON.stringify(payload)
+    });
+}
+
+/**
+ * Решения по слиянию: только записи и поля, которые отличаются от состояния сразу после diff.
+ * Компактные записи без развернутых полей пользователь не трогал.
+ */
+function collectDecisions() {
+    const decisions = [];
+    state.records.forEach(record => {
+        if (record.same && record.values) {
+            if (record.deleted) {
+                decisions.push({ id: record.id, deleted: true });
+            }
+            return;
+        }
+        const fields = [];
+        record.fields.forEach(field => {
+            const initial = field.newValue ?? field.oldValue ?? '';
+            const merged = field.mergedValue ?? '';
+            if (merged !== initial || field.deleted) {
+                fields.push({ key: field.key, mergedValue: merged, deleted: field.deleted || false });
+            }
+        });
+        if (record.deleted || fields.length) {
+            decisions.push({ id: record.id, deleted: record.deleted || false, fields });
+        }
+    });
+    return decisions;
+}
+
+let flushTimer = null;
+
+/**
+ * Ставит операцию слияния в очередь для сессии diff на сервере. Очередь отправляется пакетом
+ * после короткой паузы; подряд идущие правки одного поля схлопываются в последнюю.
+ */
+function queueOperation(operation) {
+    if (state.streaming) {
+        // Сессии на сервере еще нет: правка попадет в экспорт через решения
+        state.operationsSynced = false;
+        return;
+    }
+    if (!state.diffId) return;
+    const last = state.pendingOperations[state.pendingOperations.length - 1];
+    if (last && last.op === 'setMerged' && operation.op === 'setMerged'
+        && last.id === operation.id && last.field === operation.field) {
+        state.pendingOperations[state.pendingOperations.length - 1] = operation;
+    } else {
+        state.pendingOperations.push(operation);
+    }
+    clearTimeout(flushTimer);
+    flushTimer = setTimeout(flushOperations, 500);
+}
+
+async function flushOperations() {
+    clearTimeout(flushTimer);
+    if (!state.diffId || !state.pendingOperations.length) return;
+    const operations = state.pendingOperations;
+    state.pendingOperations = [];
+    try {
+        const response = await fetch(`/diff/${encodeURIComponent(state.diffId)}/operations`, {
+            method: 'POST',
+            headers: {'Content-Type': 'application/json'},
+            body: JSON.stringify({ operations })
+        });
+        if (!response.ok) {
+            throw new Error(await response.text() || `HTTP ${response.status}`);
+        }
+    } catch (error) {
+        // Состояние клиента остается верным; при экспорте отправим решения целиком
+        console.warn('Не удалось отправить операции слияния:', error);
+        state.operationsSynced = false;
+    }
+}
+
+const SEARCH_LIMIT = 100000;
+
+/**
+ * Ищет через индекс сессии на сервере (GET /diff/{id}/search). Поддерживает термы
+ * через пробел и поиск по полю (name:Sword). Если сервер недоступен или нашел больше
+ * SEARCH_LIMIT записей, остается локальный поиск по подстроке.
+ */
+async function loadSearchIds(query) {
+    state.searchIds = null;
+    state.searchIdsQuery = '';
+    if (!state.diffId || !query) return;
+    try {
+        await flushOperations();
+        const params = new URLSearchParams({ q: query, limit: SEARCH_LIMIT });
+        const response = await fetch(`/diff/${encodeURIComponent(state.diffId)}/search?${params}`);
+        if (!response.ok) {
+            throw new Error(await response.text() || `HTTP ${response.status}`);
+        }
+        const result = await response.json();
+        if (result.total > result.hits.length) return;
+        state.searchIds = new Set(result.hits.map(hit => hit.id));
+        state.searchIdsQuery = query.toLowerCase();
+        console.log(`Серверный поиск: ${result.total} записей за ${result.tookMs} мс`);
+    } catch (error) {
+        console.warn('Серверный поиск недоступен, ищу локально:', error);
+    }
+}
+
+const COMPACT_DIFF_TYPE = 'application/vnd.difftool.diff';
+
+/**
+ * Читает ответ с записями diff: JSON или компактный двоичный формат (см. CompactDiffWriter).
+ */
+async function readDiffPayload(response) {
+    const contentType = response.headers.get('content-type') || '';
+    if (!contentType.includes(COMPACT_DIFF_TYPE)) {
+        return response.json();
+    }
+    return decodeCompactDiff(await response.arrayBuffer());
+}
+
+const COMPACT_STATUSES = ['same', 'changed', 'added', 'removed'];
+
+function decodeCompactDiff(buffer) {
+    const bytes = new Uint8Array(buffer);
+    const view = new DataView(buffer);
+    const decoder = new TextDecoder();
+    let pos = 0;
+
+    const readByte = () => bytes[pos++];
+    const readVarint = () => {
+        let value = 0;
+        let shift = 0;
+        let b;
+        do {
+            b = bytes[pos++];
+            value += (b & 0x7f) * 2 ** shift;
+            shift += 7;
+        } while (b & 0x80);
+        return value;
+    };
+    const readUtf8 = length => {
+        const value = decoder.decode(bytes.subarray(pos, pos + length));
+        pos += length;
+        return value;
+    };
+    const readString = () => {
+        const length = readVarint();
+        return length === 0 ? null : readUtf8(length - 1);
+    };
+
+    if (bytes[0] !== 0x44 || bytes[1] !== 0x43 || bytes[2] !== 0x44 || bytes[3] !== 1) {
+        throw new Error('Неизвестный формат ответа diff');
+    }
+    pos = 4;
+    const kind = readByte();
+    const payload = {};
+    if (kind === 1) {
+        payload.format = readString();
+        if (readByte()) {
+            payload.formatConfidence = view.getFloat64(pos);
+            pos += 8;
+        }
+        payload.diffId = readString();
+        if (readByte()) {
+            payload.summary = {
+                total: readVarint(),
+                added: readVarint(),
+                removed: readVarint(),
+                changed: readVarint(),
+                unchanged: readVarint(),
+                omitted: readVarint()
+            };
+        }
+    } else {
+        payload.offset = readVarint();
+        payload.limit = readVarint();
+        payload.total = readVarint();
+    }
+
+    const keys = new Array(readVarint());
+    for (let i = 0; i < keys.length; i++) {
+        keys[i] = readString();
+    }
+
+    const records = new Array(readVarint());
+    for (let r = 0; r < records.length; r++) {
+        const id = readString();
+        const recordFlags = readByte();
+        if (recordFlags & 2) {
+            const values = new Array(readVarint() * 2);
+            for (let i = 0; i < values.length; i += 2) {
+                values[i] = keys[readVarint()];
+                values[i + 1] = readString();
+            }
+            records[r] = { id, same: true, values, deleted: Boolean(recordFlags & 1), fields: [] };
+            continue;
+        }
+        const fields = new Array(readVarint());
+        for (let f = 0; f < fields.length; f++) {
+            const key = keys[readVarint()];
+            const status = COMPACT_STATUSES[readByte()];
+            const flags = readByte();
+            const oldValue = flags & 1 ? readUtf8(readVarint()) : null;
+            const newValue = flags & 2 ? readUtf8(readVarint()) : null;
+            let mergedValue = newValue ?? oldValue;
+            if (flags & 4) {
+                mergedValue = readUtf8(readVarint());
+            } else if (flags & 8) {
+                mergedValue = null;
+            }
+            fields[f] = { key, oldValue, newValue, mergedValue, status, deleted: Boolean(flags & 16) };
+        }
+        records[r] = { id, fields, deleted: Boolean(recordFlags & 1) };
+    }
+    payload.records = records;
+    return payload;
+}
@@ -0,0 +1,48 @@
+package org.example.comparator;
+
+import org.example.dto.DiffResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DiffCacheTest {
+
+    private Path dir;
+
+    @AfterEach
+    void cleanup() throws Exception {
+        if (dir != null) {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @Test
+    void resultIsReusedOnlyWithSameComparatorSettings() throws Exception {
+        dir = Files.createTempDirectory("diff-cache");
+        File oldFile = Files.writeString(dir.resolve("old.json"), "[{\"id\":1}]").toFile();
+        File newFile = Files.writeString(dir.resolve("new.json"), "[{\"id\":2}]").toFile();
+        Path cacheFile = dir.resolve("cache.json");
+
+        DiffCache first = DiffCache.load(cacheFile);
+        DiffResult result = new DiffResult();
+        result.getAdded().add("marker");
+        first.put("a.json", first.fingerprint("a.json", new JsonComparator(1024), oldFile, newFile), result);
+        first.save();
+
+        DiffCache second = DiffCache.load(cacheFile);
+        assertThat(second.get("a.json", second.fingerprint("a.json", new JsonComparator(1024), oldFile, newFile)))
+            .isNotNull();
+        // Другой порог потокового сравнения - другой ключ, прежний результат не годится
+        assertThat(second.get("a.json", second.fingerprint("a.json", new JsonComparator(2048), oldFile, newFile)))
+            .isNull();
+    }
+}
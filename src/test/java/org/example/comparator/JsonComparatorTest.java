@@ -0,0 +1,95 @@
+package org.example.comparator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.dto.DiffResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Потоковое сравнение ({@link JsonArrayIndex}) дает те же изменения, что сравнение деревом;
+ * порядок элементов у них разный, поэтому сравниваются отсортированные списки.
+ */
+class JsonComparatorTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Path dir;
+
+    @AfterEach
+    void cleanup() throws Exception {
+        if (dir != null) {
+            for (String name : List.of("old.json", "new.json")) {
+                Files.deleteIfExists(dir.resolve(name));
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    void streamingMatchesTreeComparison() throws Exception {
+        dir = Files.createTempDirectory("json-compare");
+        File oldFile = Files.writeString(dir.resolve("old.json"), """
+            [
+              {"id": 1, "name": "a", "price": 10},
+              {"id": "2", "name": "b"},
+              {"id": 3, "name": "c", "tags": [1, 2]},
+              {"id": 4, "name": "removed"},
+              {"id": 5, "name": "first"},
+              {"id": 5, "name": "last"},
+              {"name": "no id", "value": 1},
+              {"name": "no id changed", "value": 1},
+              7
+            ]""").toFile();
+        File newFile = Files.writeString(dir.resolve("new.json"), """
+            [
+              {"name": "a", "id": 1, "price": 10},
+              {"id": "2", "name": "b2"},
+              {"id": 3, "name": "c", "tags": [2, 1]},
+              {"id": 5, "name": "last"},
+              {"id": 6, "name": "added"},
+              {"value": 1, "name": "no id"},
+              {"name": "no id changed", "value": 2}
+            ]""").toFile();
+
+        DiffResult streamed = new JsonComparator(0).compare(oldFile, newFile);
+        DiffResult tree = new JsonComparator(Long.MAX_VALUE).compare(oldFile, newFile);
+
+        assertThat(sorted(streamed.getRemoved())).isEqualTo(sorted(tree.getRemoved())).hasSize(2);
+        assertThat(sorted(streamed.getAdded())).isEqualTo(sorted(tree.getAdded())).hasSize(2);
+        assertThat(sorted(streamed.getChanged())).isEqualTo(sorted(tree.getChanged())).hasSize(2);
+    }
+
+    @Test
+    void elementsWithoutIdMatchByNumericValue() throws Exception {
+        dir = Files.createTempDirectory("json-compare");
+        File oldFile = Files.writeString(dir.resolve("old.json"), """
+            [{"name": "a", "price": 1.0, "ratio": 2.5e0}, {"name": "b", "price": 3.10}]""").toFile();
+        File newFile = Files.writeString(dir.resolve("new.json"), """
+            [{"name": "a", "price": 1.00, "ratio": 25e-1}, {"name": "b", "price": 3.1}]""").toFile();
+
+        DiffResult streamed = new JsonComparator(0).compare(oldFile, newFile);
+        DiffResult tree = new JsonComparator(Long.MAX_VALUE).compare(oldFile, newFile);
+
+        assertThat(tree.getRemoved()).isEmpty();
+        assertThat(tree.getAdded()).isEmpty();
+        assertThat(streamed.getRemoved()).isEmpty();
+        assertThat(streamed.getAdded()).isEmpty();
+        assertThat(streamed.getChanged()).isEmpty();
+    }
+
+    private List<String> sorted(List<?> items) throws Exception {
+        List<String> json = new ArrayList<>();
+        for (Object item : items) {
+            json.add(objectMapper.writeValueAsString(item));
+        }
+        json.sort(null);
+        return json;
+    }
+}
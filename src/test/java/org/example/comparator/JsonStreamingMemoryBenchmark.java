@@ -0,0 +1,91 @@
+package org.example.comparator;
+
+import org.example.dto.DiffResult;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Проверка потокового сравнения JSON на малой куче: генерирует пару массивов по {@code mb}
+ * мегабайт каждый (часть элементов изменена, удалена и добавлена) и сравнивает их
+ * {@link JsonComparator} с потоковым режимом для любого размера:
+ * <pre>
+ * java -Xmx192m -cp ... org.example.comparator.JsonStreamingMemoryBenchmark 100
+ * </pre>
+ * С аргументом {@code tree} пара сравнивается деревом: на такой куче это OutOfMemoryError.
+ */
+public class JsonStreamingMemoryBenchmark {
+    private static final int ELEMENT_SAMPLE_ID = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        long mb = args.length > 0 ? Long.parseLong(args[0]) : 100;
+        boolean tree = args.length > 1 && "tree".equals(args[1]);
+        Path dir = Files.createTempDirectory("json-streaming");
+        Path oldFile = dir.resolve("old.json");
+        Path newFile = dir.resolve("new.json");
+        try {
+            int elements = (int) ((mb << 20) / (item(ELEMENT_SAMPLE_ID, "stable").length() + 2));
+            writeArray(oldFile, elements, false);
+            writeArray(newFile, elements, true);
+            System.out.printf("Файлы: OLD %d МБ, NEW %d МБ, %d элементов%n",
+                              Files.size(oldFile) >> 20, Files.size(newFile) >> 20, elements);
+
+            long start = System.nanoTime();
+            DiffResult result = new JsonComparator(tree ? Long.MAX_VALUE : 0).compare(oldFile.toFile(), newFile.toFile());
+            System.out.printf("Удалено %d, добавлено %d, изменено полей %d за %d мс; пик кучи %d МБ при -Xmx %d МБ%n",
+                              result.getRemoved().size(), result.getAdded().size(), result.getChanged().size(),
+                              (System.nanoTime() - start) / 1_000_000, peakHeap() >> 20,
+                              Runtime.getRuntime().maxMemory() >> 20);
+        } finally {
+            Files.deleteIfExists(oldFile);
+            Files.deleteIfExists(newFile);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    /**
+     * Пишет массив из {@code elements} объектов. В NEW каждый 1000-й элемент изменен,
+     * каждый 5000-й заменен элементом с новым id и после каждого 7000-го добавлен такой же.
+     */
+    private static void writeArray(Path file, int elements, boolean changed) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write('[');
+            for (int element = 0; element < elements; element++) {
+                if (element > 0) {
+                    writer.write(",\n");
+                }
+                if (changed && element % 5000 == 4999) {
+                    writer.write(item(-element, "added"));
+                    continue;
+                }
+                writer.write(item(element, changed && element % 1000 == 0 ? "changed" : "stable"));
+                if (changed && element % 7000 == 6999) {
+                    writer.write(",\n");
+                    writer.write(item(-element, "added"));
+                }
+            }
+            writer.write(']');
+        }
+    }
+
+    private static String item(int id, String state) {
+        return "{\"id\":" + id + ",\"name\":\"Item " + id + "\",\"state\":\"" + state
+            + "\",\"price\":" + (id % 997) + ",\"tags\":[\"a\",\"b\",\"c\"],\"description\":\"" + "x".repeat(64) + "\"}";
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,136 @@
+package org.example.difftool.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.difftool.model.DatField;
+import org.example.difftool.model.DatRecord;
+import org.example.difftool.model.RecordPage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Страница diff в компактном формате читается обратно в те же записи, что в JSON.
+ * Чтение повторяет {@code readDiffPayload} из app.js.
+ */
+class CompactDiffWriterTest {
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final DiffService diffService = new DiffService(pool);
+    private final MergeService mergeService = new MergeService();
+    private final CompactDiffWriter writer = new CompactDiffWriter();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void pageRoundTripsToSameJson() throws Exception {
+        List<DatRecord> records = diffService.buildDiff(
+            DatFixtures.parse(pool, "item_name_old.txt").getRecords(),
+            DatFixtures.parse(pool, "item_name_new.txt").getRecords());
+        DatRecord changed = records.stream().filter(record -> "changed".equals(diffService.recordStatus(record)))
+            .findFirst().orElseThrow();
+        mergeService.copyOldToMerged(changed.getFields().stream()
+                                         .filter(field -> "changed".equals(field.getStatus()))
+                                         .findFirst().orElseThrow());
+        changed.getFields().get(0).setMergedValue(null);
+        records.stream().filter(record -> "removed".equals(diffService.recordStatus(record)))
+            .findFirst().ifPresent(mergeService::deleteRecord);
+        assertThat(records).anyMatch(DatRecord::isSame);
+        RecordPage page = new RecordPage(10, 50, 200, records);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writer.write(page, output);
+        RecordPage decoded = readPage(output.toByteArray());
+
+        assertThat(objectMapper.writeValueAsString(decoded)).isEqualTo(objectMapper.writeValueAsString(page));
+        assertThat(output.size()).isLessThan(objectMapper.writeValueAsBytes(page).length);
+    }
+
+    private static RecordPage readPage(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        byte[] magic = in.readNBytes(3);
+        assertThat(magic).isEqualTo(CompactDiffWriter.MAGIC);
+        assertThat(in.readUnsignedByte()).isEqualTo(CompactDiffWriter.VERSION);
+        assertThat(in.readUnsignedByte()).isEqualTo(CompactDiffWriter.KIND_PAGE);
+        int offset = readVarint(in);
+        int limit = readVarint(in);
+        int total = readVarint(in);
+
+        List<String> keys = new ArrayList<>();
+        for (int i = readVarint(in); i > 0; i--) {
+            keys.add(readString(in));
+        }
+        List<DatRecord> records = new ArrayList<>();
+        for (int i = readVarint(in); i > 0; i--) {
+            DatRecord record = new DatRecord(readString(in));
+            int flags = in.readUnsignedByte();
+            record.setDeleted((flags & CompactDiffWriter.RECORD_DELETED) != 0);
+            if ((flags & CompactDiffWriter.RECORD_SAME) != 0) {
+                List<String> values = new ArrayList<>();
+                for (int j = readVarint(in); j > 0; j--) {
+                    values.add(keys.get(readVarint(in)));
+                    values.add(readString(in));
+                }
+                record.setSame(true);
+                record.setValues(values);
+            } else {
+                for (int j = readVarint(in); j > 0; j--) {
+                    record.getFields().add(readField(in, keys));
+                }
+            }
+            records.add(record);
+        }
+        assertThat(in.read()).isEqualTo(-1);
+        return new RecordPage(offset, limit, total, records);
+    }
+
+    private static DatField readField(DataInputStream in, List<String> keys) throws IOException {
+        String key = keys.get(readVarint(in));
+        String status = List.of("same", "changed", "added", "removed").get(in.readUnsignedByte());
+        int flags = in.readUnsignedByte();
+        String oldValue = (flags & CompactDiffWriter.FIELD_OLD) != 0 ? readUtf8(in, readVarint(in)) : null;
+        String newValue = (flags & CompactDiffWriter.FIELD_NEW) != 0 ? readUtf8(in, readVarint(in)) : null;
+        String merged = newValue != null ? newValue : oldValue;
+        if ((flags & CompactDiffWriter.FIELD_MERGED) != 0) {
+            merged = readUtf8(in, readVarint(in));
+        } else if ((flags & CompactDiffWriter.FIELD_MERGED_NULL) != 0) {
+            merged = null;
+        }
+        DatField field = new DatField(key, oldValue, newValue, merged, status);
+        field.setDeleted((flags & CompactDiffWriter.FIELD_DELETED) != 0);
+        return field;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readVarint(in);
+        return length == 0 ? null : readUtf8(in, length - 1);
+    }
+
+    private static String readUtf8(DataInputStream in, int length) throws IOException {
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
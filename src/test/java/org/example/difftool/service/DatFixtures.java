@@ -0,0 +1,26 @@
+package org.example.difftool.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Образцы файлов из {@code src/test/resources/fixtures}.
+ */
+final class DatFixtures {
+
+    private DatFixtures() {
+    }
+
+    static DatParser.ParseResult parse(ForkJoinPool pool, String name) {
+        try (InputStream input = DatFixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (input == null) {
+                throw new IllegalArgumentException("Нет образца " + name);
+            }
+            return new DatParser(pool, true).parse(input);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.example.difftool.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.difftool.model.DatField;
+import org.example.difftool.model.DatFormat;
+import org.example.difftool.model.DatRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Diff по таблицам и параллельный diff по диапазонам строк дают тот же JSON,
+ * что исходный алгоритм по {@code LinkedHashMap} (он повторен здесь как эталон).
+ */
+class DiffServiceTest {
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final DiffService diffService = new DiffService(pool);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void blockFixtureMatchesBaseline() throws Exception {
+        DatParser.ParseResult oldResult = DatFixtures.parse(pool, "item_name_old.txt");
+        DatParser.ParseResult newResult = DatFixtures.parse(pool, "item_name_new.txt");
+        assertThat(newResult.getFormat()).isEqualTo(DatFormat.BLOCK);
+
+        List<DatRecord> diff = diffService.buildDiff(oldResult.getRecords(), newResult.getRecords());
+
+        assertThat(json(diff)).isEqualTo(json(baselineDiff(oldResult.getRecords(), newResult.getRecords())));
+        assertThat(diff).extracting(DatRecord::getId).containsExactly("2", "1", "3", "5", "6", "7", "4");
+        assertThat(diff).extracting(diffService::recordStatus)
+            .containsExactly("changed", "same", "changed", "changed", "same", "added", "removed");
+    }
+
+    @Test
+    void stringFixtureMatchesBaseline() throws Exception {
+        RecordTable oldRecords = DatFixtures.parse(pool, "string_old.txt").getRecords();
+        RecordTable newRecords = DatFixtures.parse(pool, "string_new.txt").getRecords();
+
+        List<DatRecord> diff = diffService.buildDiff(oldRecords, newRecords);
+
+        assertThat(json(diff)).isEqualTo(json(baselineDiff(oldRecords, newRecords)));
+        assertThat(diff).extracting(diffService::recordStatus).containsExactly("same", "changed", "added", "removed");
+    }
+
+    @Test
+    void parallelRangesMatchBaseline() throws Exception {
+        Random random = new Random(42);
+        int rows = DiffService.DIFF_CHUNK_ROWS * 3 + 123;
+        RecordTable oldRecords = new RecordTable();
+        RecordTable newRecords = new RecordTable();
+        RecordTable.RowBuilder oldRow = oldRecords.newRow();
+        RecordTable.RowBuilder newRow = newRecords.newRow();
+        for (int i = 0; i < rows; i++) {
+            String id = String.valueOf(i);
+            int kind = random.nextInt(10);
+            if (kind != 0) { // 0 - только в NEW
+                oldRow.put("id", id).put("name", "[Item " + i + "]").put("popup", "-1");
+                if (random.nextBoolean()) {
+                    oldRow.put("is_trade", "1");
+                }
+                oldRow.commit(id);
+            }
+            if (kind != 1) { // 1 - только в OLD
+                newRow.put("id", id).put("name", kind == 2 ? "[Renamed " + i + "]" : "[Item " + i + "]");
+                newRow.put("popup", kind == 3 ? " -1 " : "-1");
+                if (kind == 4) {
+                    newRow.put("tooltip_texture", "[icon." + i + "]");
+                }
+                newRow.commit(id);
+            }
+        }
+        assertThat(oldRecords.size() + newRecords.size()).isGreaterThan(DiffService.DIFF_CHUNK_ROWS * 2);
+
+        List<DatRecord> parts = new ArrayList<>();
+        diffService.streamDiff(oldRecords, newRecords, parts::addAll);
+        String expected = json(baselineDiff(oldRecords, newRecords));
+
+        assertThat(json(diffService.buildDiff(oldRecords, newRecords))).isEqualTo(expected);
+        assertThat(json(parts)).isEqualTo(expected);
+    }
+
+    private String json(List<DatRecord> records) throws Exception {
+        return objectMapper.writeValueAsString(records);
+    }
+
+    /**
+     * Алгоритм до колоночных таблиц: все id в порядке NEW, затем OLD, все ключи в порядке NEW, затем OLD.
+     * Запись с полностью совпадающими полями передается компактно, как теперь делает {@link DiffService}.
+     */
+    private static List<DatRecord> baselineDiff(RecordTable oldTable, RecordTable newTable) {
+        Set<String> allIds = new LinkedHashSet<>();
+        for (int row = 0; row < newTable.size(); row++) {
+            allIds.add(newTable.id(row));
+        }
+        for (int row = 0; row < oldTable.size(); row++) {
+            allIds.add(oldTable.id(row));
+        }
+        List<DatRecord> result = new ArrayList<>();
+        for (String id : allIds) {
+            LinkedHashMap<String, String> oldFields = fields(oldTable, id);
+            LinkedHashMap<String, String> newFields = fields(newTable, id);
+            if (oldTable.containsId(id) && newTable.containsId(id) && oldFields.equals(newFields)) {
+                List<String> values = new ArrayList<>();
+                newFields.forEach((key, value) -> {
+                    values.add(key);
+                    values.add(value);
+                });
+                DatRecord record = new DatRecord(id);
+                record.setSame(true);
+                record.setValues(values);
+                result.add(record);
+                continue;
+            }
+            Set<String> allKeys = new LinkedHashSet<>(newFields.keySet());
+            allKeys.addAll(oldFields.keySet());
+            List<DatField> diffFields = new ArrayList<>();
+            for (String key : allKeys) {
+                String oldValue = oldFields.get(key);
+                String newValue = newFields.get(key);
+                diffFields.add(new DatField(key, oldValue, newValue, newValue != null ? newValue : oldValue,
+                                            status(oldValue, newValue)));
+            }
+            DatRecord record = new DatRecord();
+            record.setId(id);
+            record.setFields(diffFields);
+            result.add(record);
+        }
+        return result;
+    }
+
+    private static LinkedHashMap<String, String> fields(RecordTable table, String id) {
+        int row = table.rowOf(id);
+        return row >= 0 ? table.toMap(row) : new LinkedHashMap<>();
+    }
+
+    private static String status(String oldValue, String newValue) {
+        if (oldValue == null) {
+            return newValue == null ? "same" : "added";
+        }
+        if (newValue == null) {
+            return "removed";
+        }
+        return Objects.equals(oldValue.trim(), newValue.trim()) ? "same" : "changed";
+    }
+}
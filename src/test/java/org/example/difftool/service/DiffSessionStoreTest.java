@@ -0,0 +1,116 @@
+package org.example.difftool.service;
+
+import org.example.difftool.model.DatField;
+import org.example.difftool.model.DatFormat;
+import org.example.difftool.model.DatRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DiffSessionStoreTest {
+
+    @Test
+    void searchIndexIsBuiltOnDemandAndCountedAgainstMemoryLimit() {
+        DiffSessionStore store = new DiffSessionStore(8, 2, 60);
+        List<DatRecord> records = records(1_400);
+        long recordBytes = DiffSessionStore.estimateBytes(records);
+        assertThat(recordBytes).isBetween(600_000L, 1_000_000L);
+
+        String first = store.put(DatFormat.BLOCK, records);
+        String second = store.put(DatFormat.BLOCK, records(1_400));
+        DiffSessionStore.DiffSession session = store.get(second);
+        assertThat(session.getEstimatedBytes()).isEqualTo(recordBytes);
+
+        SearchIndex index = session.searchIndex();
+
+        assertThat(session.searchIndex()).isSameAs(index);
+        assertThat(session.getEstimatedBytes()).isEqualTo(recordBytes + index.estimatedBytes());
+        // С индексом две сессии не помещаются в 2 MB: вытесняется давно использованная
+        assertThat(store.get(first)).isNull();
+        assertThat(store.get(second)).isSameAs(session);
+    }
+
+    @Test
+    void failedSearchIndexBuildIsRetried() {
+        DiffSessionStore store = new DiffSessionStore(8, 64, 60);
+        List<DatRecord> records = records(10);
+        records.get(3).setId(null);
+        DiffSessionStore.DiffSession session = store.get(store.put(DatFormat.BLOCK, records));
+        long recordBytes = session.getEstimatedBytes();
+
+        assertThatThrownBy(session::searchIndex).isInstanceOf(NullPointerException.class);
+        assertThat(session.getEstimatedBytes()).isEqualTo(recordBytes);
+
+        session.replaceRecords(Map.of(3, records(4).get(3)));
+        SearchIndex index = session.searchIndex();
+
+        assertThat(session.searchIndex()).isSameAs(index);
+        assertThat(session.getEstimatedBytes()).isEqualTo(recordBytes + index.estimatedBytes());
+    }
+
+    @Test
+    void changeGroupsAreBuiltOnDemandAndCounted() {
+        DiffSessionStore store = new DiffSessionStore(8, 64, 60);
+        DiffSessionStore.DiffSession session = store.get(store.put(DatFormat.BLOCK, records(1_400)));
+        long recordBytes = session.getEstimatedBytes();
+
+        ChangeGroups groups = session.changeGroups();
+
+        assertThat(session.changeGroups()).isSameAs(groups);
+        assertThat(groups.groupCount()).isEqualTo(2 * 1_400);
+        assertThat(session.getEstimatedBytes()).isEqualTo(recordBytes + groups.estimatedBytes());
+    }
+
+    @Test
+    void failedChangeGroupsBuildIsRetried() {
+        DiffSessionStore store = new DiffSessionStore(8, 64, 60);
+        List<DatRecord> records = records(10);
+        records.get(3).getFields().get(1).setKey(null);
+        DiffSessionStore.DiffSession session = store.get(store.put(DatFormat.BLOCK, records));
+
+        assertThatThrownBy(session::changeGroups).isInstanceOf(NullPointerException.class);
+
+        session.replaceRecords(Map.of(3, records(4).get(3)));
+        ChangeGroups groups = session.changeGroups();
+
+        assertThat(session.changeGroups()).isSameAs(groups);
+        assertThat(groups.groupCount()).isEqualTo(2 * 10);
+    }
+
+    @Test
+    void cachedViewsAreCountedUntilEvicted() {
+        DiffSessionStore store = new DiffSessionStore(8, 64, 60);
+        DiffSessionStore.DiffSession session = store.get(store.put(DatFormat.BLOCK, records(10)));
+        long recordBytes = session.getEstimatedBytes();
+
+        int[] first = session.cached("view:0", () -> new int[]{1, 2, 3}, view -> 1_000L);
+        assertThat(session.cached("view:0", () -> new int[0], view -> 5L)).isSameAs(first);
+        assertThat(session.getEstimatedBytes()).isEqualTo(recordBytes + 1_000L);
+
+        for (int i = 1; i <= 8; i++) {
+            session.cached("view:" + i, () -> new int[0], view -> 100L);
+        }
+        // Девятое значение вытесняет самое старое, и его память вычитается
+        assertThat(session.getEstimatedBytes()).isEqualTo(recordBytes + 8 * 100L);
+    }
+
+    private static List<DatRecord> records(int count) {
+        List<DatRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = String.valueOf(i);
+            List<DatField> fields = new ArrayList<>();
+            fields.add(new DatField("id", id, id, id, "same"));
+            fields.add(new DatField("name", "[Old item name " + i + " with a longer description]",
+                                    "[New item name " + i + " with another longer description]", null, "changed"));
+            fields.add(new DatField("icon", "[icon.etc_" + (i * 7919) + "]", "[icon.etc_" + (i * 104729) + "]",
+                                    null, "changed"));
+            records.add(new DatRecord(id, fields));
+        }
+        return records;
+    }
+}
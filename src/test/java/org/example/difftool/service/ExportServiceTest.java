@@ -0,0 +1,95 @@
+package org.example.difftool.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.difftool.model.DatField;
+import org.example.difftool.model.DatFormat;
+import org.example.difftool.model.DatRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExportServiceTest {
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final MergeService mergeService = new MergeService();
+    private final DiffService diffService = new DiffService(pool);
+    private final ExportService exportService = new ExportService(mergeService, pool, true, 4096);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Режим только изменений: клиент получает и присылает только измененные записи,
+     * сервер накладывает их на полный diff. Файл должен совпасть байт в байт с экспортом
+     * полного diff, в котором сделаны те же правки.
+     */
+    @Test
+    void changesOnlyOverlayExportsSameBytesAsFullDiff() throws Exception {
+        for (String fixture : List.of("item_name", "string")) {
+            DatParser.ParseResult oldResult = DatFixtures.parse(pool, fixture + "_old.txt");
+            DatParser.ParseResult newResult = DatFixtures.parse(pool, fixture + "_new.txt");
+            DatFormat format = newResult.getFormat();
+            List<DatRecord> fullDiff = diffService.buildDiff(oldResult.getRecords(), newResult.getRecords());
+
+            List<DatRecord> changesOnly = roundTrip(fullDiff.stream()
+                .filter(record -> !"same".equals(diffService.recordStatus(record)))
+                .toList());
+            assertThat(changesOnly).hasSizeLessThan(fullDiff.size());
+            edit(changesOnly);
+            byte[] overlaid = export(mergeService.overlay(fullDiff, changesOnly), format);
+
+            List<DatRecord> editedFullDiff = roundTrip(fullDiff);
+            edit(editedFullDiff);
+            byte[] full = export(editedFullDiff, format);
+
+            assertThat(new String(overlaid, StandardCharsets.UTF_8)).isEqualTo(new String(full, StandardCharsets.UTF_8));
+            assertThat(overlaid).isEqualTo(full);
+        }
+    }
+
+    /**
+     * Правки клиента по id: OLD вместо NEW в первом измененном поле и удаление удаленной записи.
+     */
+    private void edit(List<DatRecord> records) {
+        forRecord(records, record -> "changed".equals(diffService.recordStatus(record)), record -> {
+            for (DatField field : record.getFields()) {
+                if ("changed".equals(field.getStatus())) {
+                    mergeService.copyOldToMerged(field);
+                    return;
+                }
+            }
+        });
+        forRecord(records, record -> "removed".equals(diffService.recordStatus(record)), mergeService::deleteRecord);
+    }
+
+    private static void forRecord(List<DatRecord> records, Predicate<DatRecord> filter,
+                                  Consumer<DatRecord> action) {
+        records.stream().filter(filter).findFirst().ifPresent(action);
+    }
+
+    private byte[] export(List<DatRecord> records, DatFormat format) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        exportService.export(records, format, output);
+        return output.toByteArray();
+    }
+
+    /**
+     * Копия записей через JSON, как они приходят от клиента.
+     */
+    private List<DatRecord> roundTrip(List<DatRecord> records) throws Exception {
+        return objectMapper.readValue(objectMapper.writeValueAsBytes(records), new TypeReference<>() {
+        });
+    }
+}
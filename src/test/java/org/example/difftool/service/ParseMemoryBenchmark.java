@@ -0,0 +1,109 @@
+package org.example.difftool.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Замер удерживаемой памяти после парсинга BLOCK-файла с канонизацией коротких значений и без нее.
+ * <p>
+ * Генерирует item_name-файл из {@code records} блоков (по умолчанию 500 000), парсит его через
+ * {@link DatParser#parse(InputStream)} и после {@code System.gc()} печатает занятую кучу.
+ * Каждый режим запускается в отдельной JVM, чтобы замеры не влияли друг на друга:
+ * <pre>
+ * mvn test-compile
+ * java -Xmx4g -cp target/classes:target/test-classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *     org.example.difftool.service.ParseMemoryBenchmark 500000 true
+ * java ... ParseMemoryBenchmark 500000 false
+ * </pre>
+ * Аргументы: число записей и значение {@code difftool.parse.canonicalize-values}.
+ * Без второго аргумента выполняются оба режима подряд в одной JVM.
+ */
+public class ParseMemoryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        Path file = Files.createTempFile("parse-memory", ".dat");
+        try {
+            writeItemNames(file, records);
+            System.out.printf("Файл: %d записей, %d МБ%n", records, Files.size(file) >> 20);
+            if (args.length > 1) {
+                measure(file, Boolean.parseBoolean(args[1]));
+            } else {
+                measure(file, false);
+                measure(file, true);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void measure(Path file, boolean canonicalizeValues) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            long before = retainedHeap();
+            long started = System.nanoTime();
+            DatParser.ParseResult result;
+            try (InputStream input = Files.newInputStream(file)) {
+                result = new DatParser(pool, canonicalizeValues).parse(input);
+            }
+            long elapsed = (System.nanoTime() - started) / 1_000_000;
+            long retained = retainedHeap() - before;
+            System.out.printf("canonicalize-values=%s: записей %d, удерживается %d МБ, парсинг %d мс%n",
+                              canonicalizeValues, result.getRecords().size(), retained >> 20, elapsed);
+            // Результат должен дожить до замера
+            if (result.getRecords().isEmpty()) {
+                throw new IllegalStateException("Файл не распарсился");
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static long retainedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Записи похожи на реальный item_name: уникальные id и имена и много полей
+     * с повторяющимися короткими значениями.
+     */
+    static void writeItemNames(Path file, int records) throws IOException {
+        String[] flags = {"0", "1", "-1", "[]", "[none]", "[action_equip]", "{}", "{[0];[0]}"};
+        try (Writer writer = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), 1 << 16)) {
+            for (int id = 1; id <= records; id++) {
+                writer.write("item_name_begin\n");
+                writer.write("    id=" + id + "\n");
+                writer.write("    name=[Item " + id + "]\n");
+                writer.write("    additionalname=[]\n");
+                writer.write("    description=[Description of item " + id + " with some text]\n");
+                writer.write("    popup=" + (id % 7 == 0 ? "1" : "-1") + "\n");
+                writer.write("    default_action=[action_equip]\n");
+                writer.write("    use_order=" + (id % 100) + "\n");
+                writer.write("    name_class=" + (id % 50) + "\n");
+                writer.write("    color=" + (id % 3) + "\n");
+                writer.write("    tooltip_texture=[icon.etc_i." + (id % 500) + "]\n");
+                writer.write("    is_trade=" + flags[id % 2] + "\n");
+                writer.write("    is_drop=" + flags[(id + 1) % 2] + "\n");
+                writer.write("    is_destruct=1\n");
+                writer.write("    is_private_store=1\n");
+                writer.write("    keep_type=7\n");
+                writer.write("    is_npctrade=" + flags[id % 2] + "\n");
+                writer.write("    is_commission_store=0\n");
+                writer.write("    set_ids=" + flags[id % flags.length] + "\n");
+                writer.write("    set_bonus_desc=[]\n");
+                writer.write("    special_enchant_desc=[]\n");
+                writer.write("item_name_end\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.difftool.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Замер памяти {@link RecordTable} против прежнего хранения записи в {@code LinkedHashMap}.
+ * <p>
+ * Парсит сгенерированный item_name-файл, затем копирует все записи в
+ * {@code Map<String, LinkedHashMap<String, String>>} с теми же экземплярами строк, так что
+ * разница показывает только накладные расходы контейнеров:
+ * <pre>
+ * java -Xmx4g -cp ... org.example.difftool.service.RecordTableMemoryBenchmark 500000
+ * </pre>
+ */
+public class RecordTableMemoryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        Path file = Files.createTempFile("record-table", ".dat");
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            ParseMemoryBenchmark.writeItemNames(file, records);
+            long start = retainedHeap();
+            RecordTable table = parse(file, pool);
+            long tableBytes = retainedHeap() - start;
+
+            LinkedHashMap<String, LinkedHashMap<String, String>> rows = new LinkedHashMap<>();
+            for (int row = 0; row < table.size(); row++) {
+                rows.put(table.id(row), table.toMap(row));
+            }
+            long rowsBytes = retainedHeap() - start - tableBytes;
+
+            System.out.printf("Записей %d: RecordTable %d МБ, LinkedHashMap на запись %d МБ (без учета строк)%n",
+                              table.size(), tableBytes >> 20, rowsBytes >> 20);
+            // Обе структуры должны дожить до замера
+            List<Object> keepAlive = new ArrayList<>(List.of(table, rows));
+            if (keepAlive.isEmpty()) {
+                throw new IllegalStateException();
+            }
+        } finally {
+            pool.shutdown();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static RecordTable parse(Path file, ForkJoinPool pool) throws IOException {
+        try (InputStream input = Files.newInputStream(file)) {
+            return new DatParser(pool, true).parse(input).getRecords();
+        }
+    }
+
+    private static long retainedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,124 @@
+package org.example.difftool.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+class RecordTableTest {
+
+    @Test
+    void repeatedIdKeepsPositionAndTakesLastFields() {
+        RecordTable table = new RecordTable();
+        RecordTable.RowBuilder row = table.newRow();
+        row.put("id", "1").put("name", "first").put("color", "0").commit("1");
+        row.put("id", "2").put("name", "second").commit("2");
+        row.put("id", "1").put("name", "replaced").commit("1");
+
+        assertThat(table.size()).isEqualTo(2);
+        assertThat(table.id(0)).isEqualTo("1");
+        assertThat(table.id(1)).isEqualTo("2");
+        assertThat(table.rowOf("1")).isZero();
+        // Поле из первого вхождения, которого нет в последнем, не остается
+        assertThat(table.toMap(0)).containsExactly(entry("id", "1"), entry("name", "replaced"));
+        assertThat(table.value(0, "color")).isNull();
+        assertThat(table.toMap(1)).containsExactly(entry("id", "2"), entry("name", "second"));
+    }
+
+    @Test
+    void repeatedKeyInRowReplacesValueInPlace() {
+        RecordTable table = new RecordTable();
+        RecordTable.RowBuilder row = table.newRow();
+        row.put("id", "1").put("name", "a").put("color", "0").put("name", "b");
+
+        assertThat(row.fieldCount()).isEqualTo(3);
+        assertThat(row.keys()).containsExactly("id", "name", "color");
+        row.commit("1");
+
+        assertThat(table.toMap(0)).containsExactly(entry("id", "1"), entry("name", "b"), entry("color", "0"));
+        assertThat(row.isEmpty()).isTrue();
+    }
+
+    @Test
+    void rowsWithSameFieldOrderShareLayout() {
+        RecordTable table = new RecordTable();
+        RecordTable.RowBuilder row = table.newRow();
+        row.put("id", "1").put("name", "a").commit("1");
+        row.put("id", "2").put("name", "b").commit("2");
+        row.put("name", "c").put("id", "3").commit("3");
+        row.put("id", "4").put("name", "d").commit("4");
+
+        assertThat(table.layoutId(1)).isEqualTo(table.layoutId(0));
+        assertThat(table.layout(1)).isSameAs(table.layout(0));
+        assertThat(table.layoutId(2)).isNotEqualTo(table.layoutId(0));
+        // Возврат к прежнему порядку находит существующий layout, а не создает новый
+        assertThat(table.layoutId(3)).isEqualTo(table.layoutId(0));
+        assertThat(table.columnCount()).isEqualTo(2);
+    }
+
+    @Test
+    void fingerprintIgnoresFieldOrderAndColumnNumbers() {
+        RecordTable oldTable = new RecordTable();
+        oldTable.newRow().put("color", "0").put("id", "1").put("name", "a").commit("1");
+
+        RecordTable newTable = new RecordTable();
+        RecordTable.RowBuilder row = newTable.newRow();
+        row.put("id", "1").put("name", "a").put("color", "0").commit("1");
+        row.put("id", "2").put("name", "a").put("color", "1").commit("2");
+
+        assertThat(newTable.columnOf("color")).isNotEqualTo(oldTable.columnOf("color"));
+        assertThat(newTable.fingerprint(0)).isEqualTo(oldTable.fingerprint(0));
+        assertThat(newTable.fingerprint(1)).isNotEqualTo(oldTable.fingerprint(0));
+    }
+
+    @Test
+    void fingerprintFollowsReplacedRow() {
+        RecordTable replaced = new RecordTable();
+        RecordTable.RowBuilder row = replaced.newRow();
+        row.put("id", "1").put("name", "a").commit("1");
+        row.put("id", "1").put("name", "b").commit("1");
+
+        RecordTable direct = new RecordTable();
+        direct.newRow().put("id", "1").put("name", "b").commit("1");
+
+        assertThat(replaced.fingerprint(0)).isEqualTo(direct.fingerprint(0));
+    }
+
+    @Test
+    void appendAllMergesChunksWithCommitSemantics() {
+        RecordTable first = new RecordTable();
+        RecordTable.RowBuilder row = first.newRow();
+        row.put("id", "1").put("name", "a").commit("1");
+        row.put("id", "2").put("name", "b").commit("2");
+
+        RecordTable second = new RecordTable();
+        row = second.newRow();
+        row.put("id", "3").put("icon", "x").commit("3");
+        row.put("id", "1").put("name", "a2").put("icon", "y").commit("1");
+
+        first.appendAll(second);
+
+        assertThat(List.of(first.id(0), first.id(1), first.id(2))).containsExactly("1", "2", "3");
+        assertThat(first.toMap(0)).containsExactly(entry("id", "1"), entry("name", "a2"), entry("icon", "y"));
+        assertThat(first.toMap(2)).containsExactly(entry("id", "3"), entry("icon", "x"));
+        assertThat(first.fingerprint(0)).isEqualTo(second.fingerprint(1));
+
+        first.trimToSize();
+        assertThat(first.size()).isEqualTo(3);
+        assertThat(first.value(first.columnOf("icon"), 2)).isEqualTo("x");
+    }
+
+    @Test
+    void emptyRowHasEmptyLayout() {
+        RecordTable table = new RecordTable();
+        table.newRow().commit("1");
+
+        assertThat(table.containsId("1")).isTrue();
+        assertThat(table.layout(0)).isEmpty();
+        assertThat(table.toMap(0)).isEqualTo(Map.of());
+        assertThat(table.rowOf("missing")).isEqualTo(-1);
+    }
+}
@@ -0,0 +1,121 @@
+package org.example.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Строки {@link MappedInput#forEachLine} сверяются с {@link BufferedReader#readLine()} по тому же тексту.
+ */
+class MappedInputTest {
+
+    private final List<Path> files = new ArrayList<>();
+
+    @AfterEach
+    void cleanup() throws IOException {
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void crlfSplitAcrossCharBuffer() throws IOException {
+        // \r - последний символ первой порции декодера, \n - первый символ следующей
+        String text = "a".repeat(MappedInput.CHAR_BUFFER - 1) + "\r\n" + "second\r\n\r\nfourth\n";
+
+        assertThat(lines(write(text, StandardCharsets.UTF_8)))
+            .containsExactly("a".repeat(MappedInput.CHAR_BUFFER - 1), "second", "", "fourth")
+            .isEqualTo(readLines(text));
+    }
+
+    @Test
+    void lineLongerThanBuffer() throws IOException {
+        String text = "first\n" + "x".repeat(MappedInput.CHAR_BUFFER * 3 + 17) + "\r\nlast";
+
+        assertThat(lines(write(text, StandardCharsets.UTF_8))).isEqualTo(readLines(text)).hasSize(3);
+    }
+
+    @Test
+    void utf16LittleEndianWithAndWithoutBom() throws IOException {
+        String text = "id=1\r\nимя=Меч\rпредмет\n";
+        byte[] encoded = text.getBytes(StandardCharsets.UTF_16LE);
+        byte[] withBom = new byte[encoded.length + 2];
+        withBom[0] = (byte) 0xFF;
+        withBom[1] = (byte) 0xFE;
+        System.arraycopy(encoded, 0, withBom, 2, encoded.length);
+
+        assertThat(lines(write(withBom))).containsExactly("id=1", "имя=Меч", "предмет");
+        assertThat(lines(write(encoded))).containsExactly("id=1", "имя=Меч", "предмет");
+        assertThat(MappedInput.detectCharset(ByteBuffer.wrap(encoded))).isEqualTo(StandardCharsets.UTF_16LE);
+    }
+
+    @Test
+    void lastLineWithoutNewline() throws IOException {
+        assertThat(lines(write("a\nb", StandardCharsets.UTF_8))).containsExactly("a", "b");
+        assertThat(lines(write("a\r", StandardCharsets.UTF_8))).containsExactly("a");
+        assertThat(lines(write("\uFEFFодин", StandardCharsets.UTF_8))).containsExactly("один");
+        assertThat(lines(write("", StandardCharsets.UTF_8))).isEmpty();
+    }
+
+    @Test
+    void mappedFileAboveThreshold() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < MappedInput.MAP_THRESHOLD * 2; i++) {
+            builder.append("строка ").append(i).append(i % 3 == 0 ? "\r\n" : i % 3 == 1 ? "\n" : "\r");
+        }
+        builder.append("x".repeat(MappedInput.CHAR_BUFFER + 5));
+        String text = builder.toString();
+        Path file = write(text, StandardCharsets.UTF_8);
+        assertThat(Files.size(file)).isGreaterThan(MappedInput.MAP_THRESHOLD);
+
+        assertThat(lines(file)).isEqualTo(readLines(text));
+        try (InputStream input = MappedInput.openStream(file)) {
+            assertThat(input.readAllBytes()).isEqualTo(Files.readAllBytes(file));
+        }
+
+        byte[] changed = Files.readAllBytes(file);
+        assertThat(MappedInput.sameContent(file, write(changed))).isTrue();
+        changed[changed.length - 1] = 'y';
+        assertThat(MappedInput.sameContent(file, write(changed))).isFalse();
+    }
+
+    private List<String> lines(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        MappedInput.forEachLine(file, (text, start, end) -> lines.add(text.subSequence(start, end).toString()));
+        return lines;
+    }
+
+    private static List<String> readLines(String text) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private Path write(String text, Charset charset) throws IOException {
+        return write(text.getBytes(charset));
+    }
+
+    private Path write(byte[] bytes) throws IOException {
+        Path file = Files.createTempFile("mapped-input", ".txt");
+        files.add(file);
+        return Files.write(file, bytes);
+    }
+}